@@ -1,5 +1,7 @@
 package ad2.ss17.cflp;
 
+import java.util.concurrent.atomic.AtomicReference;
+
 /**
  * Abstrakte Klasse zum Berechnen der L&ouml;sung mittels Branch-and-Bound.
  * <p>
@@ -12,16 +14,46 @@ package ad2.ss17.cflp;
 public abstract class AbstractCFLP implements Runnable {
 
     /**
-     * Die bisher beste L&ouml;sung
+     * Die bisher beste L&ouml;sung. Wird ohne Lock per CAS ersetzt, das Lesen
+     * ist ein volatile Zugriff.
+     */
+    private final AtomicReference<BnBSolution> bestBnBSolution = new AtomicReference<>();
+
+    /**
+     * Setzt eine neue L&ouml;sung, falls sie besser als die bisher beste ist.
+     * Die L&ouml;sung wird nur kopiert, wenn die Schranke tats&auml;chlich
+     * besser ist. Kann von mehreren Threads gleichzeitig aufgerufen werden.
+     *
+     * @param newUpperBound Die obere Schranke der neuen L&ouml;sung
+     * @param newSolution   Die neue L&ouml;sung
+     * @return true, falls die L&ouml;sung &uuml;bernommen wurde
      */
-    private BnBSolution bestBnBSolution;
+    final public boolean setSolution(int newUpperBound, int[] newSolution) {
+        BnBSolution current = bestBnBSolution.get();
+        if (current != null && newUpperBound >= current.upperBound) {
+            return false;
+        }
 
-    final public synchronized boolean setSolution(int newUpperBound, int[] newSolution) {
-        if (bestBnBSolution == null || newUpperBound < bestBnBSolution.getUpperBound()) {
-            bestBnBSolution = new BnBSolution(newUpperBound, newSolution);
-            return true;
+        BnBSolution candidate = new BnBSolution(newUpperBound, newSolution);
+        while (!bestBnBSolution.compareAndSet(current, candidate)) {
+            current = bestBnBSolution.get();
+            if (current != null && newUpperBound >= current.upperBound) {
+                return false;
+            }
         }
-        return false;
+        return true;
+    }
+
+    /**
+     * Gibt die obere Schranke der bisher besten L&ouml;sung zur&uuml;ck.
+     * Ohne Lock und ohne Kopie, daher auch im Suchbaum verwendbar.
+     *
+     * @return Die obere Schranke oder {@link Integer#MAX_VALUE}, falls noch
+     * keine L&ouml;sung gesetzt wurde.
+     */
+    final public int getBestUpperBound() {
+        BnBSolution current = bestBnBSolution.get();
+        return current == null ? Integer.MAX_VALUE : current.upperBound;
     }
 
     /**
@@ -30,13 +62,13 @@ public abstract class AbstractCFLP implements Runnable {
      * @return Die bisher beste gefundene L&ouml;sung.
      */
     final public BnBSolution getBestSolution() {
-        return bestBnBSolution;
+        return bestBnBSolution.get();
     }
 
     public final class BnBSolution {
 
-        private int upperBound;
-        private int[] customersToFacility;
+        private final int upperBound;
+        private final int[] customersToFacility;
 
         public BnBSolution(int newUpperBound, int[] newSolution) {
             upperBound = newUpperBound;
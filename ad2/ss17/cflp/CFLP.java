@@ -1,6 +1,11 @@
 package ad2.ss17.cflp;
 
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * Klasse zum Berechnen der L&ouml;sung mittels Branch-and-Bound.
@@ -8,74 +13,258 @@ import java.util.*;
  */
 public class CFLP extends AbstractCFLP {
 
+    // Fuer so viele der naehesten Facilities wird die Dominanzschwelle berechnet
+    private static final int DOMINANZ_RAENGE = 3;
+
     private CFLPInstance cflp;
 
-    //First integer stores customer id
-    //array stores distance to each facility
-    private ArrayList<KeyValue[]> shortestCustomerToFacility = new ArrayList<>();
+    //Fuer jeden Kunden die Facilities nach Distanz sortiert
+    private FacilityRankIndex shortestCustomerToFacility;
+
+    // Der vollstaendige Index fuer den Warmstart, null falls nur Kandidatenlisten gebaut wurden
+    private final FacilityRankIndex fullIndex;
+
+    // Mindestlaenge der Kandidatenlisten, 0 = vollstaendiger Index
+    private final int kandidaten;
+
+    // Loesung und Multiplikatoren aus dem Warmstart oder null
+    private final int[] warmSolution;
+    private final double[] warmMultipliers;
 
-    //global upper an lower bound
+    // Multiplikatoren der Wurzel nach run(), fuer den naechsten Warmstart
+    private double[] rootMultipliers;
+
+    //Schranke der Greedy Loesung aus dem Konstruktor
+    //Waehrend der Suche gilt die Schranke der besten Loesung (getBestUpperBound)
     private int upperBound = Integer.MAX_VALUE;
 
     int[] greedyAllocation;
-    boolean[] facilityFixed;
 
+    // Naeheste Facility fuer jeden Kunden
+    private int[] nearestFacility;
+
+    // Reihenfolge, in der die Kunden fixiert werden
+    private final CustomerOrder customerOrder;
+
+    // Symmetrische Facilities und austauschbare Kunden
+    private final InstanceSymmetry symmetry;
+
+    // Pool fuer die parallele Suche, null = sequentielle Suche.
+    // Der Pool muss vom Aufrufer erzeugt werden, da der SecurityManager
+    // dem CFLP Thread das Erzeugen von Threads verbietet.
+    private final ForkJoinPool pool;
+
+    // Bis zu dieser Tiefe werden Teilbaeume als eigene Tasks abgespalten
+    private final int splitDepth;
+
+    // Einstellungen der Suche
+    private final CFLPOptions options;
+
+    // Bewiesene untere Schranke fuer das Optimum, waehrend der Suche lesbar
+    private volatile int globalLowerBound = 0;
+
+    // Ende der Zeit als System.nanoTime(), nur gueltig mit mitDeadline
+    private volatile long deadline;
+    private volatile boolean mitDeadline;
+
+    // Ab hier (System.nanoTime()) wird nur noch die beste Loesung verbessert
+    private long suchEnde;
+
+    // Die Suche wurde wegen der Zeit beendet, alle Worker steigen aus
+    private volatile boolean abgebrochen;
+
+    // Status pro Facility im aktuellen Blatt der Facility-Suche, sonst null.
+    // Wird vor dem Start der Tasks gesetzt, die Worker sehen ihn ueber den Pool.
+    private byte[] blattStatus;
+
+    // Startwert fuer die Stoerungen beim Polieren, damit Laeufe reproduzierbar sind
+    private static final long POLIER_SEED = 17;
+
+    // Knoten, Abschnitte und Verlauf der besten Loesung, immer aktiv
+    private final SearchStatistics statistics;
 
 
     public CFLP(CFLPInstance instance) {
+        this(instance, null);
+    }
+
+    /**
+     * @param instance Die Probleminstanz
+     * @param pool     Pool fuer die parallele Suche oder null fuer die sequentielle Suche
+     */
+    public CFLP(CFLPInstance instance, ForkJoinPool pool) {
+        this(instance, pool, new CFLPOptions());
+    }
+
+    /**
+     * @param instance Die Probleminstanz
+     * @param pool     Pool fuer die parallele Suche oder null fuer die sequentielle Suche
+     * @param options  Einstellungen der Suche
+     */
+    public CFLP(CFLPInstance instance, ForkJoinPool pool, CFLPOptions options) {
+        this(instance, pool, options, null);
+    }
+
+    /**
+     * Suche mit dem Ergebnis einer frueheren Suche als Start, siehe {@link CFLPWarmStart}.
+     *
+     * @param instance  Die Probleminstanz
+     * @param pool      Pool fuer die parallele Suche oder null fuer die sequentielle Suche
+     * @param options   Einstellungen der Suche
+     * @param warmStart Ergebnis einer frueheren Suche oder null
+     */
+    public CFLP(CFLPInstance instance, ForkJoinPool pool, CFLPOptions options, CFLPWarmStart warmStart) {
         this.cflp = instance;
+        this.pool = pool;
+        this.options = options;
+        this.splitDepth = pool == null ? 0 : berechneSplitDepth(pool.getParallelism());
         this.greedyAllocation = new int[this.cflp.getNumCustomers()];
-        this.facilityFixed = new boolean[this.cflp.getNumFacilities()];
 
         // Idee:
         //
-        // Erstelle eine sortierte Liste von Kunden mit den Distanzkosten,
-        // Sortiert nach Distanzkosten.
-        // Hierbei wird die Klasse KeyValue erstellt, welche die Facility
-        // Nummer speichert
-        sortiereFacilityKosten();
+        // Erstelle fuer jeden Kunden eine nach Distanzkosten sortierte Liste
+        // der Facilities. Der Index speichert Facility Nummer und Distanz
+        // flach in primitiven Arrays. Ein Warmstart auf derselben Instanz hat
+        // den Index schon aktuell gehalten. Mit Kandidatenliste werden nur die
+        // k naehesten Facilities pro Kunde sortiert, der vollstaendige Index
+        // entsteht dann nicht.
+        boolean gleicheInstanz = warmStart != null && warmStart.instance() == this.cflp;
+        int k = kandidatenAnzahl();
+        this.kandidaten = k < this.cflp.getNumFacilities() ? k : 0;
+        if (gleicheInstanz) {
+            this.fullIndex = warmStart.index();
+        } else if (this.kandidaten > 0) {
+            this.fullIndex = null;
+        } else {
+            this.fullIndex = new FacilityRankIndex(this.cflp);
+        }
+        this.shortestCustomerToFacility = this.fullIndex != null ? this.fullIndex
+                : new FacilityRankIndex(this.cflp, this.kandidaten);
+        this.customerOrder = new CustomerOrder(this.cflp, this.shortestCustomerToFacility, options.order,
+                gleicheInstanz ? warmStart.changed() : null);
+        this.symmetry = new InstanceSymmetry(this.cflp);
+        this.statistics = new SearchStatistics(this.cflp.getNumCustomers());
 
         this.greedyAllocation = initialFill();
+        this.nearestFacility = this.greedyAllocation.clone();
         this.upperBound = calculateUpperBound(this.greedyAllocation);
+
+        this.warmSolution = warmStart == null ? null : repariere(warmStart.solution());
+        this.warmMultipliers = warmStart == null ? null : warmStart.multipliers();
     }
 
     /**
-     * Sortiert die kosten der Distanzen aller Kunden zu der jeweiligen Facility aufsteigend
+     * Macht aus der Loesung einer frueheren Suche eine gueltige Zuordnung fuer diese
+     * Instanz: Kunden ohne gueltige Facility kommen zur naehesten Facility.
+     *
+     * @param loesung Die alte Loesung, wird veraendert
+     * @return Die Zuordnung oder null, falls sie nicht zur Groesse der Instanz passt
      */
-    private void sortiereFacilityKosten() {
+    private int[] repariere(int[] loesung) {
+        if (loesung == null || loesung.length != this.cflp.getNumCustomers()) {
+            return null;
+        }
+        for (int j = 0; j < loesung.length; j++) {
+            if (loesung[j] < 0 || loesung[j] >= this.cflp.getNumFacilities()) {
+                loesung[j] = this.nearestFacility[j];
+            }
+        }
+        return loesung;
+    }
+
+    /**
+     * Mindestlaenge der Kandidatenlisten aus {@link CFLPOptions#candidates}. Mit
+     * <code>auto</code> gilt: bei c-mal so viel Kapazitaet (erste Ausbaustufe) wie Bedarf
+     * reicht etwa jede c-te Facility, die naeheste davon liegt fuer einen Kunden
+     * ungefaehr unter seinen c naehesten. Mit Faktor 2 als Reserve, mindestens 4. Zu
+     * kurze Listen verlaengert {@link #kandidatenliste(CFLPSearchState)}.
+     *
+     * @return Die Mindestlaenge, 0 = keine Kandidatenliste
+     */
+    private int kandidatenAnzahl() {
 
         //=============== Variablen - START ==//
 
-        int n = this.cflp.getNumFacilities();
-        int m = this.cflp.getNumCustomers();
+        long bedarf = 0;
+        long kapazitaet = 0;
 
-        KeyValue[] facilityDistances;
-        
         //=============== Variablen - END ==//
 
-        // Idee:
-        //
-        // Fuer jeden Customer wird ein neues KeyValue Objekt erstellt
-        // Dieses KeyValue Objekt enthaelt die Nummer der Facility und die Distanzkosten
-        // Somit bleibt die Uebersicht erhalten und braucht kein Array mit 3 Dimensionen
+        if (this.options.candidates != CFLPOptions.CANDIDATES_AUTO) {
+            return this.options.candidates;
+        }
+        for (int b : this.cflp.bandwidths) {
+            bedarf += b;
+        }
+        for (int b : this.cflp.maxBandwidths) {
+            kapazitaet += b;
+        }
+        long c = (kapazitaet + bedarf - 1) / Math.max(1, bedarf);
+        return (int) Math.max(4, Math.min(this.cflp.getNumFacilities(), 2 * c));
+    }
 
-        // Fuer jeden Customer
-        for ( int j = 0; j < m; j++ ){
+    /**
+     * Ersetzt den Index durch eine Kandidatenliste mit mindestens {@link #kandidaten}
+     * Facilities pro Kunde. Eine Facility faellt fuer einen Kunden nur weg, wenn die
+     * Schranke der Wurzel mit dieser Zuordnung ueber der besten Loesung liegt, siehe
+     * {@link LagrangeBound#candidateThresholds(int)}. Ohne Lagrange-Schranke gilt das
+     * Gleiche fuer die einfache Schranke, also lambda_j = Distanzkosten zur naehesten
+     * Facility. Reicht eine Schwelle ueber das Ende der bisherigen Liste hinaus, wird
+     * diese aus der Instanz verlaengert.
+     *
+     * @param state Der Suchzustand der Wurzel, die Schranke ist schon berechnet
+     */
+    private void kandidatenliste(CFLPSearchState state) {
+
+        //=============== Variablen - START ==//
+
+        int m = this.cflp.getNumCustomers();
+        int e = this.cflp.distanceCosts;
+        int ub = getBestUpperBound();
 
-            // wird ein KeyValue Objekt erstellt
-            facilityDistances = new KeyValue[cflp.getNumFacilities()];
+        long[] schwelle;
 
-            // Hier setze die Distanzkosten fuer alle Facilities die Distanzkosten und die Nummer ein
-            for (int i = 0; i < n; i++){
-                facilityDistances[i] = new KeyValue(i, cflp.distance(i, j));
+        //=============== Variablen - END ==//
+
+        if (state.lagrange() != null) {
+            schwelle = state.lagrange().candidateThresholds(ub);
+        } else {
+            long summe = 0;
+            for (int j = 0; j < m; j++) {
+                summe += (long) e * this.shortestCustomerToFacility.distance(j, 0);
+            }
+            schwelle = new long[m];
+            for (int j = 0; j < m; j++) {
+                schwelle[j] = (long) e * this.shortestCustomerToFacility.distance(j, 0) + ub - summe;
             }
+        }
 
-            // Sortiere nach Value
-            Arrays.sort(facilityDistances);
+        this.shortestCustomerToFacility = new FacilityRankIndex(this.cflp, this.shortestCustomerToFacility,
+                this.kandidaten, schwelle);
+        if (state.lagrange() != null) {
+            state.lagrange().setCandidates(this.shortestCustomerToFacility);
+        }
+    }
 
-            // KeyValue Objekte sind sortiert und am Ende in die Liste hinzufuegen
-            this.shortestCustomerToFacility.add(facilityDistances);
+    /**
+     * Berechnet die Tiefe bis zu der Teilbaeume abgespalten werden.
+     * Es sollen deutlich mehr Tasks als Worker entstehen, damit sich
+     * unterschiedlich grosse Teilbaeume per Work-Stealing ausgleichen.
+     *
+     * @param parallelism Anzahl der Worker
+     * @return Tiefe im Kundenbaum
+     */
+    private int berechneSplitDepth(int parallelism) {
+        int n = Math.max(2, this.cflp.getNumFacilities());
+        int m = this.cflp.getNumCustomers();
+
+        int depth = 0;
+        long tasks = 1;
+        while (tasks < 16L * parallelism && depth < m - 1) {
+            tasks *= n;
+            depth++;
         }
+        return depth;
     }
 
 
@@ -92,7 +281,6 @@ public class CFLP extends AbstractCFLP {
         int[] customerToFacility = new int[cflp.getNumCustomers()];
 
         int closestFacility;
-        KeyValue[] distance;
 
         //=============== Variablen - END ==//
         
@@ -104,8 +292,7 @@ public class CFLP extends AbstractCFLP {
 
         for ( int j = 0; j < m; j++ ) {
 
-            distance = this.shortestCustomerToFacility.get(j);
-            closestFacility = distance[0].key;
+            closestFacility = this.shortestCustomerToFacility.nearest(j);
             customerToFacility[j] = closestFacility;
 
         }
@@ -127,275 +314,1004 @@ public class CFLP extends AbstractCFLP {
     @Override
     public void run() {
 
-        int[] customerAllocation = new int[cflp.getNumCustomers()];
+        // Ohne Deadline vom Aufrufer gilt das Zeitlimit ab jetzt
+        if (!this.mitDeadline && this.options.timeLimit > 0) {
+            setDeadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.options.timeLimit));
+        }
+        if (this.mitDeadline) {
+            long rest = this.deadline - System.nanoTime();
+            this.suchEnde = this.deadline - Math.min(TimeUnit.MILLISECONDS.toNanos(this.options.polishTime), rest / 4);
+        }
 
-        Arrays.fill(customerAllocation, 0);
-        Arrays.fill(this.facilityFixed, false);
+        SearchEvents.Search ereignis = null;
+        if (SearchEvents.enabled()) {
+            ereignis = new SearchEvents.Search();
+            ereignis.begin();
+        }
 
-        setSolution(this.upperBound, this.greedyAllocation);
+        uebernehme(this.upperBound, this.greedyAllocation, "greedy");
+        this.statistics.construction("greedy", this.upperBound, -1);
+        int[] startLoesung = this.options.construction ? startheuristiken() : null;
+
+        CFLPSearchState state = new CFLPSearchState(this.cflp, this.nearestFacility);
+        if (this.options.bound == CFLPOptions.Bound.LAGRANGE) {
+            state.setLagrange(new LagrangeBound(this.cflp, this.nearestFacility,
+                    this.options.lagrangeRootIterations, this.options.lagrangeNodeIterations));
+            state.lagrange().setMultipliers(this.warmMultipliers);
+            if (this.mitDeadline) {
+                state.lagrange().setDeadline(this.suchEnde);
+            }
+        }
+        if (this.warmSolution != null) {
+            uebernehme(calculateUpperBound(this.warmSolution), this.warmSolution, "warmstart");
+        }
+        if (this.options.localSearch) {
+            state.setLocalSearch(new LocalSearch(this.cflp, this.shortestCustomerToFacility));
+            if (this.mitDeadline) {
+                state.localSearch().setDeadline(this.suchEnde);
+            }
+            verbessereLoesung(state.localSearch(), this.greedyAllocation, "greedy");
+            if (startLoesung != null) {
+                verbessereLoesung(state.localSearch(), startLoesung, "start");
+            }
+            if (this.warmSolution != null) {
+                verbessereLoesung(state.localSearch(), this.warmSolution, "warmstart");
+            }
+        }
+
+        // Schranke der Wurzel, die Multiplikatoren sind der Warmstart fuer alle Knoten.
+        // Erreicht sie schon die Greedy Loesung, ist diese optimal.
+        int rootBound = state.lowerBound();
+        if (state.lagrange() != null) {
+            rootBound = Math.max(rootBound, state.lagrange().bound(state, getBestUpperBound()));
+            this.rootMultipliers = state.lagrange().rootMultipliers();
+        }
+        this.globalLowerBound = Math.min(rootBound, getBestUpperBound());
+        this.statistics.root(getBestUpperBound(), rootBound);
+
+        if (this.kandidaten > 0 && rootBound < getBestUpperBound()) {
+            kandidatenliste(state);
+        }
 
-        branchAndBound(0, customerAllocation);
+        if (rootBound < getBestUpperBound()) {
+            if (this.options.search == CFLPOptions.Search.BESTFIRST) {
+                bestFirst(state, rootBound);
+            } else if (this.options.search == CFLPOptions.Search.FACILITY) {
+                facilitySuche(state);
+            } else {
+                tiefensuche(0, state);
+            }
+        }
+        state.flushStatistics(this.statistics, getBestUpperBound(), this.globalLowerBound);
+
+        if (this.abgebrochen) {
+            // Der Rest der Zeit gehoert der besten Loesung
+            polieren();
+        } else {
+            // Der ganze Baum ist abgearbeitet, die beste Loesung ist optimal
+            this.globalLowerBound = getBestUpperBound();
+        }
 
+        this.statistics.commitSearch(ereignis, getBestUpperBound(), this.globalLowerBound, this.abgebrochen);
     }
 
+    /**
+     * Setzt das Ende der Zeit. Die Suche prueft die Uhr alle
+     * {@link CFLPOptions#checkInterval} Knoten, nach jeder Lagrange-Schranke, im
+     * Subgradientenverfahren und in der lokalen Suche, beendet sich kurz vor der Deadline
+     * selbst und verwendet den letzten Teil ({@link CFLPOptions#polishTime}) zum
+     * Verbessern der besten Loesung. Ohne Aufruf gilt {@link CFLPOptions#timeLimit}
+     * ab dem Start von run().
+     *
+     * @param deadlineNanos Das Ende als Wert von {@link System#nanoTime()}
+     */
+    public void setDeadline(long deadlineNanos) {
+        this.deadline = deadlineNanos;
+        this.mitDeadline = true;
+    }
 
-    private boolean branchAndBound(int currentCustomer, int[] customerAllocation) {
+    /**
+     * Startet die Eroeffnungsheuristiken ({@link ConstructionHeuristics}), mit Pool
+     * parallel, sonst nacheinander. Jede Loesung wird uebernommen, falls sie besser ist,
+     * und mit Kosten und Laufzeit in die Statistik eingetragen. Die Heuristiken
+     * bekommen zusammen hoechstens ein Zehntel der Suchzeit.
+     * <p>
+     * Nacheinander laufen die billigen Heuristiken zuerst, jede bekommt ab ihrem Start
+     * den gleichen Anteil der restlichen Zeit. Was MARGINAL und DROP nicht brauchen,
+     * bleibt damit ADD, und ADD kann den anderen keine Zeit wegnehmen.
+     * </p>
+     *
+     * @return Die beste Loesung der Heuristiken oder null
+     */
+    private int[] startheuristiken() {
 
         //=============== Variablen - START ==//
 
-        int n = this.cflp.getNumFacilities();   // Facility Anzahl
-        int m = this.cflp.getNumCustomers();    // Kunden Anzahl
+        long jetzt = System.nanoTime();
+        long ende = jetzt + (this.suchEnde - jetzt) / 10;
+        String[] namen = {"marginal", "drop", "add"};
 
-        KeyValue[] shortestDist;
+        List<ForkJoinTask<int[]>> tasks = new ArrayList<>();
+        int[] beste = null;
+        int besteKosten = Integer.MAX_VALUE;
 
         //=============== Variablen - END ==//
-        
-        // Rekursionsabbruchbedingung
-        // Wenn am letzte Kunde angekommen ist, wird zurueckgegangen
-        if (currentCustomer == this.cflp.getNumCustomers()){
-            return true;
+
+        for (int k = 0; k < namen.length; k++) {
+            tasks.add(new StartTask(namen[k], ende, this.pool != null ? 1 : namen.length - k));
         }
 
-        // Die kuerzeste Distanz vom derzeitigen Kunden
-        shortestDist = this.shortestCustomerToFacility.get(currentCustomer);
+        for (ForkJoinTask<int[]> task : tasks) {
+            if (this.pool != null) {
+                this.pool.execute(task);
+            } else {
+                task.invoke();
+            }
+        }
 
+        for (ForkJoinTask<int[]> task : tasks) {
+            int[] loesung = task.join();
+            if (loesung == null) {
+                continue;
+            }
+            int kosten = calculateUpperBound(loesung);
+            if (kosten < besteKosten) {
+                besteKosten = kosten;
+                beste = loesung;
+            }
+        }
+        return beste;
+    }
 
-        for( int i = 0; i < n; i++ ) {
+    /**
+     * Das Ergebnis der Suche als Start fuer eine Suche auf der leicht geaenderten
+     * Instanz, siehe {@link CFLPWarmStart}. Nach run() aufrufen.
+     *
+     * @return Der Warmstart
+     */
+    public CFLPWarmStart warmStart() {
+        BnBSolution beste = getBestSolution();
+        FacilityRankIndex index = this.fullIndex != null ? this.fullIndex : new FacilityRankIndex(this.cflp);
+        return new CFLPWarmStart(this.cflp, index,
+                beste == null ? this.greedyAllocation.clone() : beste.getBestSolution(), this.rootMultipliers);
+    }
 
-            int nearestFac = shortestDist[i].key;
+    /**
+     * Setzt eine bekannte Loesung, z.B. aus dem Cache, als erste beste Loesung. Die
+     * Suche startet dann mit deren Kosten als oberer Schranke. Vor run() aufrufen.
+     *
+     * @param assignment Eine gueltige Zuordnung Kunde -&gt; Facility
+     */
+    public void setInitialSolution(int[] assignment) {
+        uebernehme(this.cflp.objectiveValue(assignment), assignment, "start");
+    }
+
+    /**
+     * @return true, falls die Suche wegen der Zeit beendet wurde
+     */
+    public boolean isTimedOut() {
+        return this.abgebrochen;
+    }
+
+    /**
+     * Beendet die Suche von aussen, z.B. durch einen Watchdog. Die Worker steigen
+     * beim naechsten Knoten aus, die beste Loesung bleibt erhalten.
+     */
+    public void cancel() {
+        this.abgebrochen = true;
+    }
 
-            // Fixiere Kunde
-            customerAllocation[currentCustomer] = nearestFac;
 
-            // Alle anderen Kunden werden mithilfe von Greedy-Methode den anderen Facilities zugewiesen
-            int[] greedyCustomerToFacility = greedyCustomerToFacility(customerAllocation, currentCustomer);
+    /**
+     * Iterated Local Search auf der besten Loesung bis zur Deadline: einige zufaellige
+     * Kunden wechseln zu einer ihrer naehesten Facilities, danach wird mit der lokalen
+     * Suche verbessert. Uebernommen wird nur eine echte Verbesserung.
+     */
+    private void polieren() {
 
-            // Am Anfang ist noch keine Facility fixiert
-            // bzw es wird resettet
-            Arrays.fill(this.facilityFixed, false);
+        //=============== Variablen - START ==//
 
-            // Berechne eine moegliche LowerBound fuer die derzeitige Kunden Belgung
-            int lowerBound = calculateLowerBound(greedyCustomerToFacility, currentCustomer);
+        int n = this.cflp.getNumFacilities();
+        int m = this.cflp.getNumCustomers();
+
+        LocalSearch localSearch = new LocalSearch(this.cflp, this.shortestCustomerToFacility);
+        Random random = new Random(POLIER_SEED);
 
-            if (lowerBound < this.upperBound) {
+        //=============== Variablen - END ==//
 
-                // Berechne die UpperBound von den belegten Kunden
-                int localUpperBound =  calculateUpperBound(greedyCustomerToFacility);
+        localSearch.setDeadline(this.deadline);
 
-                if (localUpperBound < this.upperBound) {
+        while (System.nanoTime() - this.deadline < 0) {
 
-                    this.upperBound = localUpperBound;
-                    this.greedyAllocation = greedyCustomerToFacility;
-                    setSolution(calculateUpperBound(this.greedyAllocation), this.greedyAllocation);
+            int[] loesung = getBestSolution().getBestSolution();
 
+            int stoerungen = 2 + random.nextInt(Math.max(1, Math.min(8, m / 4)));
+            for (int k = 0; k < stoerungen; k++) {
+                int j = random.nextInt(m);
+                loesung[j] = this.shortestCustomerToFacility.facility(j, random.nextInt(Math.min(this.shortestCustomerToFacility.size(j), 8)));
+            }
+
+            verbessereLoesung(localSearch, loesung, "polieren");
+        }
+    }
+
+    /**
+     * @return Die bisher bewiesene untere Schranke fuer das Optimum. Nach dem Ende
+     * der Suche ist sie gleich der besten Loesung.
+     */
+    public int getLowerBound() {
+        return this.globalLowerBound;
+    }
+
+    /**
+     * @return Die Zaehler der Suche, vollstaendig erst nach dem Ende von run()
+     */
+    SearchStatistics statistics() {
+        return this.statistics;
+    }
+
+
+    /**
+     * Arbeitet den Teilbaum unter dem Suchzustand per Tiefensuche ab, mit dem Pool
+     * parallel, sonst im aktuellen Thread.
+     *
+     * @param depth Anzahl der fixierten Kunden
+     * @param state Der Suchzustand, wird bei der parallelen Suche nicht veraendert
+     */
+    private void tiefensuche(int depth, CFLPSearchState state) {
+        if (this.pool == null) {
+            branchAndBound(depth, state);
+        } else {
+            this.pool.invoke(new TeilbaumTask(depth, new CFLPSearchState(state), depth + this.splitDepth));
+        }
+    }
+
+
+    /**
+     * Best-First-Suche: es wird immer der offene Knoten mit der kleinsten unteren
+     * Schranke expandiert. Dessen Schranke ist damit eine untere Schranke fuer das
+     * Optimum, die Suche endet sobald sie die beste Loesung erreicht.
+     * <p>
+     * Die offenen Knoten liegen kompakt im {@link NodePool}. Der Suchzustand wird
+     * fuer jeden entnommenen Knoten ueber den gemeinsamen Pfad mit dem vorigen
+     * Knoten umgestellt (undo bis zum gemeinsamen Vorfahren, dann apply). Ist der
+     * Knotenspeicher voll, werden neue Kinder sofort per Tiefensuche abgearbeitet,
+     * damit der Speicherverbrauch begrenzt bleibt.
+     * </p>
+     *
+     * @param state     Der Suchzustand der Wurzel
+     * @param rootBound Die untere Schranke der Wurzel
+     */
+    private void bestFirst(CFLPSearchState state, int rootBound) {
+
+        //=============== Variablen - START ==//
+
+        int n = this.cflp.getNumFacilities();
+        int m = this.cflp.getNumCustomers();
+
+        FacilityRankIndex shortestDist = this.shortestCustomerToFacility;
+        NodePool nodes = new NodePool(this.options.nodeLimit);
+
+        // Kunden und Facilities des Pfades zum aktuellen Knoten
+        int[] pfadKunde = new int[m];
+        int[] pfad = new int[m];
+
+        //=============== Variablen - END ==//
+
+        nodes.push(nodes.allocate(-1, -1, -1, 0, rootBound));
+
+        while (!nodes.isEmpty() && !this.abgebrochen) {
+
+            int node = nodes.pop();
+            int lowerBound = nodes.bound(node);
+
+            // Alle offenen Knoten haben eine mindestens so grosse Schranke
+            if (lowerBound >= getBestUpperBound()) {
+                break;
+            }
+            this.globalLowerBound = lowerBound;
+
+            int depth = nodes.depth(node);
+            for (int k = node; nodes.depth(k) > 0; k = nodes.parent(k)) {
+                pfadKunde[nodes.depth(k) - 1] = nodes.customer(k);
+                pfad[nodes.depth(k) - 1] = nodes.facility(k);
+            }
+
+            // Gemeinsamen Pfad mit dem aktuellen Zustand behalten
+            int gemeinsam = 0;
+            while (gemeinsam < Math.min(state.depth(), depth)
+                    && state.customerAt(gemeinsam) == pfadKunde[gemeinsam]
+                    && state.facilityAt(gemeinsam) == pfad[gemeinsam]) {
+                gemeinsam++;
+            }
+            while (state.depth() > gemeinsam) {
+                state.undo();
+            }
+            for (int d = gemeinsam; d < depth; d++) {
+                state.apply(pfadKunde[d], pfad[d]);
+            }
+
+            int currentCustomer = this.customerOrder.next(depth, state);
+            int start = ersterRang(state, currentCustomer);
+            long schwelle = Long.MAX_VALUE;
+
+            for (int i = 0; i < shortestDist.size(currentCustomer); i++) {
+
+                int nearestFac = shortestDist.facility(currentCustomer, i);
+                long distanzKosten = (long) this.cflp.distanceCosts * shortestDist.distance(currentCustomer, i);
+
+                // Diese und alle weiteren Facilities sind dominiert
+                if (distanzKosten > schwelle) {
+                    break;
+                }
+                schwelle = Math.min(schwelle, dominanzSchwelle(state, currentCustomer, i, nearestFac, distanzKosten));
+
+                if (i < start || !facilityErlaubt(state, currentCustomer, nearestFac)) {
+                    continue;
                 }
 
-                if (lowerBound < this.upperBound) {
-                    branchAndBound(currentCustomer + 1, customerAllocation);
+                state.apply(currentCustomer, nearestFac);
+
+                int childBound = knotenSchranke(state);
+
+                // Blaetter sind mit setSolution bereits erledigt
+                if (childBound < getBestUpperBound() && depth + 1 < m) {
+
+                    int child = nodes.allocate(node, currentCustomer, nearestFac, depth + 1, Math.max(childBound, lowerBound));
+                    if (child >= 0) {
+                        nodes.push(child);
+                    } else {
+                        tiefensuche(depth + 1, state);
+                    }
                 }
+
+                state.undo();
             }
+
+            nodes.release(node);
         }
-        return true;
     }
 
 
     /**
-     * Diese Hilfsmethode werden fuer lower und upperBound benoetigt.
-     * Hierbei werden den restlichen nicht fixierten Customer eine facility zugwiesen
-     * welche die naehste ist (Greedy Style)
+     * Verzweigung ueber Facilities: jede Facility wird offen oder geschlossen gesetzt,
+     * Facilities mit vielen Kunden, fuer die sie die naeheste ist, zuerst. Zuerst kommt
+     * jeweils der Zweig, in dem die Facility so steht wie in der besten Loesung.
+     * <p>
+     * Offen heisst hier "bekommt Bandbreite &gt; 0", Kunden ohne Bandbreite duerfen an
+     * jede Facility. Jede Loesung gehoert damit zu genau einem Blatt, naemlich zur
+     * Menge ihrer Facilities mit Bandbreite, und die Schranken duerfen fuer offene
+     * Facilities die erste Ausbaustufe verlangen:
+     * </p>
+     * <ul>
+     * <li>einfach: jeder Kunde mit Bandbreite zur naehesten nicht geschlossenen Facility,
+     * die anderen zur naehesten, plus die erste Ausbaustufe aller offenen Facilities,</li>
+     * <li>Lagrange: geschlossene Facilities bekommen nur Kunden ohne Bandbreite, offene
+     * mindestens die erste Ausbaustufe, siehe {@link LagrangeBound#setFacilityStatus(byte[])}.</li>
+     * </ul>
+     * <p>
+     * In einem Blatt sind alle Facilities entschieden, die Kunden werden dann per
+     * Tiefensuche auf die offenen Facilities verteilt, mit der besten Loesung als
+     * Schranke. Die Statistik zaehlt die Knoten beider Ebenen.
+     * </p>
      *
-     * @param currSetting
-     * @param currentCustomer
-     * @return
+     * @param state Der Suchzustand der Wurzel, ohne fixierte Kunden
      */
-    private int[] greedyCustomerToFacility(int[] currSetting, int currentCustomer){
+    private void facilitySuche(CFLPSearchState state) {
 
         //=============== Variablen - START ==//
 
-        int n = this.cflp.getNumFacilities();   // Facility Anzahl
-        int m = this.cflp.getNumCustomers();    // Kunden Anzahl
+        int n = this.cflp.getNumFacilities();
+        int m = this.cflp.getNumCustomers();
 
-        int[] localSetting = currSetting.clone();
+        byte[] status = new byte[n];
+        int[] reihenfolge = new int[n];
+        byte[] zuerst = new byte[n];
+        long[] keys = new long[n];
+        int[] naehesteFuer = new int[n];
 
-        KeyValue[] distance;
-        int nearestFac;
+        int[] beste = getBestSolution().getBestSolution();
+        boolean[] benutzt = new boolean[n];
 
         //=============== Variablen - END ==//
 
-        // Fuellt fuer alle nicht fixierten Customer die naehste Facility auf
-        for( int j = currentCustomer + 1; j < m; j++ ) {
-            distance = this.shortestCustomerToFacility.get(j);
-            nearestFac = distance[0].key;
-            localSetting[j] = nearestFac;
+        // Idee:
+        //
+        // Wie in CustomerOrder: Schluessel und Facility Nummer in einem long,
+        // Facilities mit den meisten naehesten Kunden zuerst
+        for (int j = 0; j < m; j++) {
+            naehesteFuer[this.shortestCustomerToFacility.nearest(j)]++;
+            benutzt[beste[j]] |= this.cflp.bandwidths[j] > 0;
+        }
+        for (int i = 0; i < n; i++) {
+            keys[i] = ((long) -naehesteFuer[i] << 32) | i;
+        }
+        Arrays.sort(keys);
+        for (int k = 0; k < n; k++) {
+            reihenfolge[k] = (int) keys[k];
+            zuerst[k] = benutzt[reihenfolge[k]] ? LagrangeBound.OFFEN : LagrangeBound.GESCHLOSSEN;
         }
-        return localSetting;
 
+        if (state.lagrange() != null) {
+            state.lagrange().setFacilityStatus(status);
+        }
+
+        facilityKnoten(0, state, status, reihenfolge, zuerst, new long[m + 1], new long[1]);
+
+        if (state.lagrange() != null) {
+            state.lagrange().setFacilityStatus(null);
+        }
     }
 
+    /**
+     * Entscheidet die Facility reihenfolge[depth] und steigt in beide Zweige ab.
+     *
+     * @param depth       Anzahl der entschiedenen Facilities
+     * @param state       Der Suchzustand der Wurzel, nur fuer die Lagrange-Schranke
+     * @param status      Status pro Facility, wird beim Backtracking zurueckgesetzt
+     * @param reihenfolge Die Facilities in Verzweigungsreihenfolge
+     * @param zuerst      Der erste Zweig pro Position in reihenfolge
+     * @param knoten      Bewertete Knoten pro Tiefe (ab Tiefe m zusammengefasst)
+     * @param pruned      Davon abgeschnitten, ein Element
+     */
+    private void facilityKnoten(int depth, CFLPSearchState state, byte[] status, int[] reihenfolge, byte[] zuerst,
+                                long[] knoten, long[] pruned) {
+
+        if (depth == reihenfolge.length) {
+            facilityBlatt(state, status);
+            this.statistics.add(knoten, pruned[0], getBestUpperBound(), this.globalLowerBound);
+            Arrays.fill(knoten, 0);
+            pruned[0] = 0;
+            return;
+        }
+
+        int i = reihenfolge[depth];
+
+        for (int zweig = 0; zweig < 2 && !this.abgebrochen; zweig++) {
+
+            status[i] = zweig == 0 ? zuerst[depth]
+                    : zuerst[depth] == LagrangeBound.OFFEN ? LagrangeBound.GESCHLOSSEN : LagrangeBound.OFFEN;
+
+            if (this.mitDeadline && System.nanoTime() - this.suchEnde >= 0) {
+                this.abgebrochen = true;
+                break;
+            }
+
+            int lowerBound = facilitySchranke(depth + 1, state, status);
+            boolean abschneiden = lowerBound >= getBestUpperBound();
+            knoten[Math.min(depth + 1, knoten.length - 1)]++;
+            if (abschneiden) {
+                pruned[0]++;
+            } else {
+                facilityKnoten(depth + 1, state, status, reihenfolge, zuerst, knoten, pruned);
+            }
+        }
+
+        status[i] = LagrangeBound.FREI;
+    }
 
     /**
-     * Die UpperBound weist die nicht fixierten Kunden eine Facility anhand der kuerzesten Distanz
-     * zu.
+     * Untere Schranke fuer alle Loesungen, deren benutzte Facilities zum Status passen.
+     * Die Lagrange-Schranke nur, falls die einfache nicht abschneidet.
      *
-     * @param setting
-     * @return
+     * @param depth  Anzahl der entschiedenen Facilities
+     * @param state  Der Suchzustand der Wurzel
+     * @param status Status pro Facility
+     * @return Die untere Schranke, Integer.MAX_VALUE falls ein Kunde mit Bandbreite keine
+     * nicht geschlossene Facility mehr hat
      */
-    private int calculateUpperBound(int[] setting) {
+    private int facilitySchranke(int depth, CFLPSearchState state, byte[] status) {
 
         //=============== Variablen - START ==//
 
-        int kosten = 0;
+        int n = this.cflp.getNumFacilities();
+        int m = this.cflp.getNumCustomers();
+
+        // Mit Kandidatenliste enthaelt sie alle Facilities besserer Loesungen
+        FacilityRankIndex index = this.shortestCustomerToFacility;
 
-        int bandwidthGebrauch[] = new int[this.cflp.getNumFacilities()];
-        int distanzGebrauch[] = new int[this.cflp.getNumFacilities()];
+        long distanz = 0;
+        long errichtung = 0;
 
         //=============== Variablen - END ==//
 
+        for (int i = 0; i < n; i++) {
+            if (status[i] == LagrangeBound.OFFEN) {
+                errichtung += this.cflp.openingCost(i, 1);
+            }
+        }
 
-        // Berechne Bandbreite Bedarf fuer jede Facility
-        for( int j = 0; j < this.cflp.getNumCustomers(); j++ ) {
-
-            int i = setting[j];                                     // Facility Nr.
-            int bandwidthVonCustomer = this.cflp.bandwidths[j];     // Bandwidth Anforderung von Customer
+        for (int j = 0; j < m; j++) {
+            int r = naechsteErlaubte(j, status);
+            if (r == index.size(j)) {
+                return Integer.MAX_VALUE;
+            }
+            distanz += index.distance(j, r);
+        }
 
-            bandwidthGebrauch[i] += bandwidthVonCustomer;           // Summiere Bandbreitenanforderung
-            distanzGebrauch[i] += this.cflp.distance(i, j);
+        long lowerBound = distanz * this.cflp.distanceCosts + errichtung;
+        if (lowerBound >= getBestUpperBound()) {
+            return (int) Math.min(lowerBound, Integer.MAX_VALUE);
         }
 
-        // Berechne Errichtungskosten
-        for( int i = 0; i < this.cflp.getNumFacilities(); i++ ) {
+        if (state.lagrange() != null) {
+            lowerBound = Math.max(lowerBound, state.lagrange().bound(state, getBestUpperBound(), depth));
+        }
+        return (int) lowerBound;
+    }
 
-            if( bandwidthGebrauch[i] == 0 ) {
-                continue;   // Facility wird nicht gebaut
+    /**
+     * Rang der naehesten Facility, an die Kunde j beim gegebenen Status darf: Kunden mit
+     * Bandbreite nicht an geschlossene, die anderen an jede.
+     *
+     * @return Der Rang, index.size(j) falls es keine gibt
+     */
+    private int naechsteErlaubte(int j, byte[] status) {
+        FacilityRankIndex index = this.shortestCustomerToFacility;
+        int r = 0;
+        if (this.cflp.bandwidths[j] > 0) {
+            while (r < index.size(j) && status[index.facility(j, r)] == LagrangeBound.GESCHLOSSEN) {
+                r++;
             }
+        }
+        return r;
+    }
+
+    /**
+     * Verteilt die Kunden auf die offenen Facilities: die Tiefensuche ueber die Kunden,
+     * geschlossene Facilities werden fuer Kunden mit Bandbreite beim Verzweigen
+     * uebersprungen. Nur der Suchzustand ist pro Blatt neu, mit der naehesten erlaubten
+     * Facility als Vervollstaendigung und einfacher Schranke, O(n + m). Abgeschnitten
+     * wird gegen die beste Loesung, Index, Kundenreihenfolge, Symmetrien, lokale Suche
+     * und die Lagrange-Schranke mit dem Status der Facilities bleiben dieselben.
+     * <p>
+     * Dominanz und Symmetrie duerfen dabei auf geschlossene Facilities verweisen: die
+     * bessere bzw. gleichwertige Loesung benutzt dann andere Facilities und gehoert zu
+     * einem anderen Blatt.
+     * </p>
+     *
+     * @param state  Der Suchzustand der Wurzel, liefert Lagrange-Schranke und lokale Suche
+     * @param status Status pro Facility, alle entschieden
+     */
+    private void facilityBlatt(CFLPSearchState state, byte[] status) {
+
+        //=============== Variablen - START ==//
 
-            int ausbaustufe = (int) Math.ceil(bandwidthGebrauch[i] / (double) this.cflp.maxBandwidths[i]);
-            int ausbaustufeKosten = myFactor(ausbaustufe, this.cflp.openingCosts[i]);
+        int m = this.cflp.getNumCustomers();
 
-            // Berechne Kosten zum Bauen aller Facilities
-            kosten += ausbaustufeKosten;
+        FacilityRankIndex index = this.shortestCustomerToFacility;
+        int[] naechsteOffene = new int[m];
 
-            // Distanzkosten
-            kosten += distanzGebrauch[i] * this.cflp.distanceCosts;
+        //=============== Variablen - END ==//
+
+        for (int j = 0; j < m; j++) {
+            int r = naechsteErlaubte(j, status);
+            if (r == index.size(j)) {
+                return;
+            }
+            naechsteOffene[j] = index.facility(j, r);
         }
 
-        return kosten;
+        CFLPSearchState blatt = new CFLPSearchState(this.cflp, naechsteOffene);
+        blatt.setLagrange(state.lagrange());
+        blatt.setLocalSearch(state.localSearch());
+
+        this.blattStatus = status;
+        tiefensuche(0, blatt);
+        this.blattStatus = null;
+        blatt.flushStatistics(this.statistics, getBestUpperBound(), this.globalLowerBound);
     }
 
 
     /**
-     * Berechnet die LowerBound fuer die jeweilige Situation
-     *
-     * Die Idee ist eine "nicht" realistische Kosten der Kunden zu finden.
-     * Hierbei werden nur die Distanzkosten und nicht die Errichtungskosten addiert.
+     * Fixiert den naechsten Kunden aus der {@link CustomerOrder} nacheinander an allen
+     * Facilities (naeheste zuerst).
+     * Die Schranken werden inkrementell ueber den Suchzustand berechnet, beim
+     * Backtracking wird die Zuordnung wieder zurueckgenommen. Im eingeschwungenen
+     * Zustand wird pro Knoten nichts alloziert.
      *
-     * Falls eine Facility fixiert ist, dann und nur dann werden die Errichtungskosten addiert
-     *
-     * @param setting
-     * @param fixedCustomer
-     * @return
+     * @param depth Anzahl der bereits fixierten Kunden
+     * @param state Der Suchzustand mit den fixierten Kunden
+     * @return true
      */
-    private int calculateLowerBound(int[] setting, int fixedCustomer){
+    private boolean branchAndBound(int depth, CFLPSearchState state) {
 
         //=============== Variablen - START ==//
 
-        int kosten = 0;
-
         int n = this.cflp.getNumFacilities();   // Facility Anzahl
         int m = this.cflp.getNumCustomers();    // Kunden Anzahl
 
-        int e = this.cflp.distanceCosts;        // fixierte Distanzkosten
-
-        int bandwidthGebrauch[] = new int[n];
-        int distanzGebrauch[] = new int[n];
+        FacilityRankIndex shortestDist = this.shortestCustomerToFacility;
 
         //=============== Variablen - END ==//
+        
+        // Rekursionsabbruchbedingung
+        // Wenn am letzte Kunde angekommen ist, wird zurueckgegangen
+        if (depth == this.cflp.getNumCustomers()){
+            return true;
+        }
 
+        int currentCustomer = this.customerOrder.next(depth, state);
+        int start = ersterRang(state, currentCustomer);
+        long schwelle = Long.MAX_VALUE;
 
-        // Idee:
-        //
-        // Fuer jeden Customer der fixiert ist, wird der Facility status auf true gesetzt
-        // Der Facility status hat den Sinn, dass das in der lowerBound die Errichtungskosten
-        // fuer die Facility dazugerechnet werden
-        // Fuer nicht fixierte Kunden werden keine Errichtungskosten addiert
+        // Facilities vom derzeitigen Kunden aus nach Distanz
+        for( int i = 0; i < shortestDist.size(currentCustomer); i++ ) {
+
+            int nearestFac = shortestDist.facility(currentCustomer, i);
+            long distanzKosten = (long) this.cflp.distanceCosts * shortestDist.distance(currentCustomer, i);
+
+            // Diese und alle weiteren Facilities sind dominiert
+            if (distanzKosten > schwelle) {
+                break;
+            }
+            schwelle = Math.min(schwelle, dominanzSchwelle(state, currentCustomer, i, nearestFac, distanzKosten));
 
-        for (int c = 0; c <= fixedCustomer; c++){
+            // Symmetrische Varianten wurden schon durchsucht
+            if (i < start || !facilityErlaubt(state, currentCustomer, nearestFac)) {
+                continue;
+            }
 
-            int i = setting[c];
+            // Fixiere Kunde
+            state.apply(currentCustomer, nearestFac);
 
-            int usedFacility = setting[c];
-            this.facilityFixed[usedFacility] = true;
+            if (bewerteKnoten(state)) {
+                branchAndBound(depth + 1, state);
+            }
 
-            int bandwidthVonCustomer = this.cflp.bandwidths[c];     // Bandwidth Anforderung von Customer
-            bandwidthGebrauch[i] += bandwidthVonCustomer;           // Summiere Bandbreitenanforderung
+            state.undo();
 
+            if (this.abgebrochen) {
+                break;
+            }
         }
+        return true;
+    }
+
 
-        // Berechne Bandbreite Bedarf fuer jede Facility
-        for( int j = 0; j < m; j++ ) {
-            int i = setting[j];
-            distanzGebrauch[i] += this.cflp.distance(i, j);
+    /**
+     * Berechnet die Schranken fuer den Knoten des Suchzustands und uebernimmt die
+     * Greedy-Vervollstaendigung, falls sie eine bessere Loesung ist.
+     *
+     * @param state Der Suchzustand nach dem Fixieren eines Kunden
+     * @return true, falls der Knoten nicht abgeschnitten werden kann
+     */
+    private boolean bewerteKnoten(CFLPSearchState state) {
+        return knotenSchranke(state) < getBestUpperBound();
+    }
+
+
+    /**
+     * Wie {@link #bewerteKnoten(CFLPSearchState)}, liefert aber die untere Schranke.
+     * Jeder Knoten wird im Suchzustand gezaehlt, alle checkInterval Knoten gehen die
+     * Zaehler an die {@link SearchStatistics}.
+     *
+     * @param state Der Suchzustand nach dem Fixieren eines Kunden
+     * @return Die untere Schranke des Knotens
+     */
+    private int knotenSchranke(CFLPSearchState state) {
+
+        // Billige Knoten fragen die Uhr nur alle checkInterval Knoten ab, teure Knoten
+        // (Lagrange-Schranke) nach der Schranke selbst. Nach dem Ende schneidet jeder
+        // Knoten ab.
+        if (state.tick(this.options.checkInterval)) {
+            state.flushStatistics(this.statistics, getBestUpperBound(), this.globalLowerBound);
+            pruefeDeadline();
+        }
+        if (this.abgebrochen) {
+            return Integer.MAX_VALUE;
         }
 
-        // Berechne Errichtungskosten
-        for( int i = 0; i < n; i++ ) {
+        int lowerBound = berechneSchranke(state);
+        state.countNode(lowerBound >= getBestUpperBound());
+        return lowerBound;
+    }
 
-            if( bandwidthGebrauch[i] == 0 ) {
-                continue;   // Facility wird nicht gebaut
-            }
 
-            // Wenn der Status der Facility auf true ist, dann werden die Errichtungskosten/Ausbaustufen
-            // dazugerechnet.
-            if( this.facilityFixed[i] ) {
-                int ausbaustufe = (int) Math.ceil(bandwidthGebrauch[i] / (double) this.cflp.maxBandwidths[i]);
-                int ausbaustufeKosten = myFactor(ausbaustufe, this.cflp.openingCosts[i]);
+    /**
+     * Die untere Schranke eines Knotens. Die teure Lagrange-Schranke wird nur
+     * berechnet, falls die einfache nicht abschneidet.
+     *
+     * @param state Der Suchzustand nach dem Fixieren eines Kunden
+     * @return Die untere Schranke des Knotens
+     */
+    private int berechneSchranke(CFLPSearchState state) {
+
+        // Berechne eine moegliche LowerBound fuer die derzeitige Kunden Belgung
+        int lowerBound = state.lowerBound();
 
-                // Berechne Kosten zum Bauen der fixed Facility
-                kosten += ausbaustufeKosten;
+        if (lowerBound >= getBestUpperBound()) {
+            return lowerBound;
+        }
+
+        // Berechne die UpperBound von den belegten Kunden,
+        // die restlichen Kunden sind bei der naehesten Facility.
+        // Die Belegung wird nur bei einer besseren Loesung kopiert
+        // und vorher mit der lokalen Suche verbessert
+        if (state.upperBound() < getBestUpperBound()) {
+            if (state.localSearch() != null) {
+                verbessereLoesung(state.localSearch(), state.assignment(), "suche");
             }
+            uebernehme(state.upperBound(), state.assignment(), "suche");
+        }
 
-            // Distanzkosten zur Facility
-            kosten += distanzGebrauch[i] * e;
+        if (lowerBound >= getBestUpperBound()) {
+            return lowerBound;
         }
 
-        return kosten ;
+        // Die teurere Lagrange-Schranke nur, wenn die einfache nicht abschneidet
+        // und noch freie Kunden uebrig sind
+        if (state.lagrange() != null && state.depth() < this.cflp.getNumCustomers()) {
+            lowerBound = Math.max(lowerBound, state.lagrange().bound(state, getBestUpperBound()));
+            // Eine Auswertung kostet O(n * m), da faellt die Uhr nicht ins Gewicht
+            pruefeDeadline();
+        }
+
+        return lowerBound;
     }
 
 
-    private int myFactor(int k, int baseCosts) {
-        switch (k) {
-            case 0:
-                return 0;
-            case 1:
-                return baseCosts;
-            case 2:
-                return (int) Math.ceil(1.5 * baseCosts);
-            default:
-                int fib1 = baseCosts;
-                int fib2 = (int) Math.ceil(1.5 * baseCosts);
-                for (int i = 3; i <= k; i++) {
-                    int tmp = fib1 + fib2 + (4 - i) * baseCosts;
-                    fib1 = fib2;
-                    fib2 = tmp;
-                }
-                return fib2;
+    /**
+     * Beendet die Suche, sobald das Ende der Suchzeit erreicht ist.
+     */
+    private void pruefeDeadline() {
+        if (this.mitDeadline && System.nanoTime() - this.suchEnde >= 0) {
+            this.abgebrochen = true;
         }
     }
 
-    // Diese Klasse speichert Facility Nummer und die Kosten kompakt ab
-    class KeyValue implements Comparable<KeyValue>{
-        int key;
-        int value;
 
-        private KeyValue(int key, int value){
-            this.key = key;
-            this.value = value;
+    /**
+     * Verbessert eine neue Loesung mit der lokalen Suche und uebernimmt das Ergebnis,
+     * falls es besser als die beste bekannte Loesung ist.
+     *
+     * @param localSearch Die lokale Suche des Workers
+     * @param assignment  Die neue Loesung, wird nicht veraendert
+     * @param quelle      Herkunft fuer die Statistik
+     */
+    private void verbessereLoesung(LocalSearch localSearch, int[] assignment, String quelle) {
+        int[] verbessert = localSearch.improve(assignment);
+        uebernehme(localSearch.cost(), verbessert, quelle);
+    }
+
+
+    /**
+     * Setzt eine neue Loesung mit setSolution und traegt sie, falls sie besser
+     * ist, in den Verlauf der Statistik ein.
+     *
+     * @param upperBound Die Kosten der Loesung
+     * @param assignment Die Loesung
+     * @param quelle     Herkunft fuer die Statistik
+     */
+    private void uebernehme(int upperBound, int[] assignment, String quelle) {
+        if (setSolution(upperBound, assignment)) {
+            this.statistics.incumbent(upperBound, this.globalLowerBound, quelle);
+        }
+    }
+
+
+    /**
+     * Erster Rang, den Kunde j wegen der Kunden-Symmetrie bekommen darf.
+     */
+    private int ersterRang(CFLPSearchState state, int j) {
+        return this.options.symmetry ? this.symmetry.firstRank(state, j, this.shortestCustomerToFacility) : 0;
+    }
+
+    /**
+     * Facility-Symmetrie: von gleichen Facilities wird die naechste erst verwendet,
+     * wenn die vorige schon Kunden hat. In einem Blatt der Facility-Suche sind
+     * geschlossene Facilities fuer Kunden mit Bandbreite nie erlaubt.
+     */
+    private boolean facilityErlaubt(CFLPSearchState state, int j, int i) {
+        if (this.blattStatus != null && this.blattStatus[i] == LagrangeBound.GESCHLOSSEN
+                && this.cflp.bandwidths[j] > 0) {
+            return false;
+        }
+        return !this.options.symmetry || this.symmetry.facilityAllowed(state, i);
+    }
+
+
+    /**
+     * Dominanzregel fuer Kunde j: In jeder Vervollstaendigung kann j von einer Facility i
+     * zur Facility f wechseln. Das spart e * (d_ij - d_fj) an Distanzkosten und kostet bei f
+     * hoechstens den groessten Sprung der Errichtungskosten beim Hinzufuegen von b_j,
+     * solange f hoechstens fixedLoad(f) plus die freie Bandbreite bekommt. Ist die
+     * Ersparnis echt groesser, ist keine Loesung mit j an i optimal.
+     * <p>
+     * Geliefert wird die Schwelle e * d_fj + Sprung: jede Facility mit hoeheren
+     * Distanzkosten ist dominiert. Da die Facilities nach Distanz sortiert sind, bricht
+     * die Suche beim ersten Rang ueber der Schwelle ab. Nur fuer die naehesten
+     * {@link #DOMINANZ_RAENGE} Facilities, da jeder Aufruf O(Ausbaustufen) kostet.
+     * </p>
+     *
+     * @param state         Der Suchzustand vor dem Fixieren von j
+     * @param j             Der Kunde
+     * @param rang          Der Rang von f fuer j
+     * @param f             Die Facility
+     * @param distanzKosten e * d_fj
+     * @return Die Schwelle oder Long.MAX_VALUE
+     */
+    private long dominanzSchwelle(CFLPSearchState state, int j, int rang, int f, long distanzKosten) {
+
+        //=============== Variablen - START ==//
+
+        int load = state.fixedLoad(f);
+        int maxLoad = (int) Math.min(Integer.MAX_VALUE, load + state.freeBandwidth());
+        int sprung;
+
+        //=============== Variablen - END ==//
+
+        if (!this.options.dominance || rang >= DOMINANZ_RAENGE) {
+            return Long.MAX_VALUE;
+        }
+
+        sprung = this.cflp.maxMarginalOpeningCost(f, load, maxLoad, this.cflp.bandwidths[j]);
+        if (sprung == CFLPInstance.COST_OVERFLOW) {
+            return Long.MAX_VALUE;
+        }
+        return distanzKosten + sprung;
+    }
+
+
+    /**
+     * Die UpperBound weist die nicht fixierten Kunden eine Facility anhand der kuerzesten Distanz
+     * zu.
+     *
+     * @param setting Eine vollstaendige Zuordnung Kunde -> Facility
+     * @return Die Kosten, bei int Ueberlauf Integer.MAX_VALUE
+     */
+    private int calculateUpperBound(int[] setting) {
+
+        //=============== Variablen - START ==//
+
+        int[] bandwidthGebrauch = new int[this.cflp.getNumFacilities()];
+
+        //=============== Variablen - END ==//
+
+
+        // Bandbreite pro Facility und Distanzkosten in einem Durchlauf
+        long kosten = (long) this.cflp.distanceCosts * this.cflp.accumulate(setting, bandwidthGebrauch);
+
+        // Errichtungskosten der Ausbaustufe aus der Tabelle der Instanz, ohne Bandbreite 0
+        for( int i = 0; i < this.cflp.getNumFacilities(); i++ ) {
+            kosten += this.cflp.openingCost(i, bandwidthGebrauch[i]);
+        }
+
+        return (int) Math.min(kosten, Integer.MAX_VALUE);
+    }
+
+
+    /**
+     * Eine Eroeffnungsheuristik als Task fuer den Pool. Die Loesung wird mit Kosten und
+     * Laufzeit in die Statistik eingetragen und uebernommen, falls sie besser ist.
+     * Passen ihre Kosten nicht in ein int, liefert der Task null.
+     */
+    private class StartTask extends RecursiveTask<int[]> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String name;
+        private final long ende;
+        private final int teile;
+
+        /**
+         * @param name  Die Heuristik
+         * @param ende  Ende der Zeit fuer alle Heuristiken als Wert von {@link System#nanoTime()}
+         * @param teile Die Heuristik bekommt 1/teile der restlichen Zeit ab ihrem Start
+         */
+        StartTask(String name, long ende, int teile) {
+            this.name = name;
+            this.ende = ende;
+            this.teile = teile;
         }
 
         @Override
-        public int compareTo(KeyValue o) {
-            return Integer.compare(value, o.value);
+        protected int[] compute() {
+            long beginn = System.nanoTime();
+            ConstructionHeuristics heuristiken = new ConstructionHeuristics(cflp, shortestCustomerToFacility,
+                    beginn + (ende - beginn) / teile, mitDeadline);
+            int[] loesung;
+            switch (name) {
+                case "add":
+                    loesung = heuristiken.add();
+                    break;
+                case "drop":
+                    loesung = heuristiken.drop();
+                    break;
+                default:
+                    loesung = heuristiken.marginal();
+            }
+            int kosten = calculateUpperBound(loesung);
+            if (kosten == Integer.MAX_VALUE) {
+                // z.B. ADD nach der Deadline mit wenigen ueberlasteten Facilities
+                statistics.construction(name, -1, System.nanoTime() - beginn);
+                return null;
+            }
+            statistics.construction(name, kosten, System.nanoTime() - beginn);
+            uebernehme(kosten, loesung, name);
+            return loesung;
+        }
+    }
+
+
+    /**
+     * Ein Teilbaum der Suche, der von einem Worker des ForkJoinPools bearbeitet wird.
+     *
+     * Bis zur Tiefe splitBis wird fuer jede nicht abgeschnittene Facility ein eigener
+     * Task mit einer Kopie des Suchzustands abgespalten. Darunter wird der Teilbaum
+     * sequentiell mit branchAndBound abgearbeitet. Alle Worker teilen sich die
+     * beste Loesung aus AbstractCFLP, eine neue Loesung schneidet sofort auch bei
+     * den anderen ab.
+     */
+    private class TeilbaumTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int depth;
+        private final CFLPSearchState state;
+        private final int splitBis;
+
+        TeilbaumTask(int depth, CFLPSearchState state, int splitBis) {
+            this.depth = depth;
+            this.state = state;
+            this.splitBis = splitBis;
+        }
+
+        @Override
+        protected void compute() {
+
+            //=============== Variablen - START ==//
+
+            int n = cflp.getNumFacilities();
+            int m = cflp.getNumCustomers();
+
+            FacilityRankIndex shortestDist = shortestCustomerToFacility;
+            List<TeilbaumTask> tasks = new ArrayList<>(n);
+
+            //=============== Variablen - END ==//
+
+            if (depth == m || abgebrochen) {
+                return;
+            }
+
+            // Unterhalb von splitBis wird nicht mehr aufgeteilt
+            if (depth >= splitBis) {
+                branchAndBound(depth, state);
+                state.flushStatistics(statistics, getBestUpperBound(), globalLowerBound);
+                return;
+            }
+
+            int currentCustomer = customerOrder.next(depth, state);
+
+            int start = ersterRang(state, currentCustomer);
+            long schwelle = Long.MAX_VALUE;
+
+            for (int i = 0; i < shortestDist.size(currentCustomer); i++) {
+
+                int nearestFac = shortestDist.facility(currentCustomer, i);
+                long distanzKosten = (long) cflp.distanceCosts * shortestDist.distance(currentCustomer, i);
+
+                if (distanzKosten > schwelle) {
+                    break;
+                }
+                schwelle = Math.min(schwelle, dominanzSchwelle(state, currentCustomer, i, nearestFac, distanzKosten));
+
+                if (i < start || !facilityErlaubt(state, currentCustomer, nearestFac)) {
+                    continue;
+                }
+
+                state.apply(currentCustomer, nearestFac);
+
+                if (bewerteKnoten(state)) {
+                    tasks.add(new TeilbaumTask(depth + 1, new CFLPSearchState(state), splitBis));
+                }
+
+                state.undo();
+            }
+            state.flushStatistics(statistics, getBestUpperBound(), globalLowerBound);
+
+            invokeAll(tasks);
         }
     }
 
-}
\ No newline at end of file
+}
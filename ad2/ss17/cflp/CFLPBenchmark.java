@@ -0,0 +1,473 @@
+package ad2.ss17.cflp;
+
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+/**
+ * Wiederholbare Laufzeitmessung f&uuml;r das Einlesen, die Zielfunktion, die Schranken,
+ * die lokale Suche und komplette L&ouml;sungsl&auml;ufe.
+ * <p>
+ * Jede Messung hat Aufw&auml;rm- und Messiterationen fester Dauer, damit JIT und
+ * Warmup der JVM nicht mitgemessen werden. Ausgegeben werden Durchsatz (Mittelwert
+ * und Standardabweichung &uuml;ber die Iterationen), mittlere Zeit pro Operation,
+ * allozierte Bytes pro Operation und Allokationsrate (ThreadMXBean des messenden
+ * Threads) sowie Anzahl und Dauer der Garbage Collections. Komplette L&ouml;sungen
+ * laufen als Einzelmessungen sequentiell im messenden Thread.
+ * </p>
+ * <p>
+ * Aufruf: <code>java ad2.ss17.cflp.CFLPBenchmark [Optionen] [Instanzdateien]</code>.
+ * Ohne Dateien werden die Instanzen 0000 bis 0015 im aktuellen Verzeichnis verwendet,
+ * dazu kommen gr&ouml;&szlig;ere Instanzen aus dem {@link CFLPGenerator}. Optionen:
+ * </p>
+ * <ul>
+ * <li><code>--filter=regex</code> nur Messungen, deren Name passt</li>
+ * <li><code>--warmup=n</code>, <code>--iterations=n</code> Anzahl der Iterationen (3, 5)</li>
+ * <li><code>--iteration-time=ms</code> Dauer einer Iteration (500)</li>
+ * <li><code>--solve-runs=n</code> Messl&auml;ufe pro L&ouml;sung (3)</li>
+ * <li><code>--generated=n*m,...</code> erzeugte Instanzen (50x500,100x2000), leer = keine</li>
+ * <li><code>--check</code> statt zu messen die schnelle Zielfunktion der Suche gegen
+ * {@link CFLPInstance#calcObjectiveValue(int[])} pr&uuml;fen, Exit-Code 1 bei Abweichungen</li>
+ * <li>alle Optionen aus {@link CFLPOptions}, z.B. <code>--time-limit=ms</code> f&uuml;r die L&ouml;sungen</li>
+ * </ul>
+ */
+public class CFLPBenchmark {
+
+    /**
+     * Eine gemessene Operation. Der R&uuml;ckgabewert wird aufsummiert, damit der
+     * JIT die Berechnung nicht wegoptimiert.
+     */
+    private interface Operation {
+        long run() throws Exception;
+    }
+
+    // Senke fuer die Ergebnisse der Operationen
+    private static volatile long sink;
+
+    // Ergebnis von --check fuer Kosten, die nicht in ein int passen
+    private static final String UEBERLAUF = "Ueberlauf";
+
+    private int warmup = 3;
+    private int iterations = 5;
+    private long iterationMillis = 500;
+    private int solveRuns = 3;
+    private Pattern filter = null;
+    private String generated = "50x500,100x2000";
+    private boolean check = false;
+
+    private final CFLPOptions options = new CFLPOptions();
+    private final List<String> files = new ArrayList<>();
+
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+
+    public static void main(String[] args) throws Exception {
+        CFLPBenchmark benchmark = new CFLPBenchmark();
+        benchmark.options.timeLimit = 5000;
+
+        for (String a : args) {
+            if (!benchmark.parseOption(a)) {
+                System.err.println("Unbekannte Option " + a);
+                System.exit(1);
+            }
+        }
+        if (benchmark.files.isEmpty()) {
+            for (int k = 0; k <= 15; k++) {
+                String f = String.format("%04d", k);
+                if (new File(f).isFile()) {
+                    benchmark.files.add(f);
+                }
+            }
+        }
+
+        if (benchmark.check) {
+            System.exit(benchmark.checkAll() ? 0 : 1);
+        }
+        benchmark.runAll();
+    }
+
+    private boolean parseOption(String a) {
+        if (!a.startsWith("--")) {
+            files.add(a);
+            return true;
+        }
+        String value = a.substring(a.indexOf('=') + 1);
+        try {
+            if (a.startsWith("--filter=")) {
+                filter = Pattern.compile(value);
+            } else if (a.startsWith("--warmup=")) {
+                warmup = Integer.parseInt(value);
+            } else if (a.startsWith("--iterations=")) {
+                iterations = Math.max(1, Integer.parseInt(value));
+            } else if (a.startsWith("--iteration-time=")) {
+                iterationMillis = Long.parseLong(value);
+            } else if (a.startsWith("--solve-runs=")) {
+                solveRuns = Math.max(1, Integer.parseInt(value));
+            } else if (a.startsWith("--generated=")) {
+                generated = value;
+            } else if (a.equals("--check")) {
+                check = true;
+            } else {
+                return options.parseOption(a);
+            }
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        return true;
+    }
+
+
+    /**
+     * F&uuml;hrt alle Messungen aus, deren Name zum Filter passt.
+     */
+    private void runAll() throws Exception {
+
+        //=============== Variablen - START ==//
+
+        List<String> namen = new ArrayList<>();
+        List<CFLPInstance> instanzen = ladeInstanzen(namen);
+
+        //=============== Variablen - END ==//
+
+        System.out.println(String.format("%-34s %5s %12s %10s %12s %12s %10s %8s",
+                "Benchmark", "Modus", "ops/s", "+-", "us/op", "B/op", "MB/s", "GC ms"));
+
+        for (int k = 0; k < instanzen.size(); k++) {
+            final String name = namen.get(k);
+            final CFLPInstance instanz = instanzen.get(k);
+            final FacilityRankIndex index = new FacilityRankIndex(instanz);
+            final int[] nearest = new int[instanz.getNumCustomers()];
+            for (int j = 0; j < nearest.length; j++) {
+                nearest[j] = index.nearest(j);
+            }
+
+            if (k < files.size()) {
+                final String file = files.get(k);
+                messe("read/" + name, () -> new CFLPInstanceReader(file).readInstance().instance.getNumCustomers());
+            }
+
+            messe("objective/" + name, () -> instanz.objectiveValue(nearest));
+
+            messe("objective.check/" + name, () -> instanz.calcObjectiveValue(nearest));
+
+            messe("bound.simple/" + name, boundsOperation(instanz, index, nearest));
+
+            messe("bound.lagrangeRoot/" + name, () -> {
+                CFLPSearchState state = new CFLPSearchState(instanz, nearest);
+                LagrangeBound lagrange = new LagrangeBound(instanz, nearest,
+                        options.lagrangeRootIterations, options.lagrangeNodeIterations);
+                return lagrange.bound(state, Integer.MAX_VALUE);
+            });
+
+            messe("bound.lagrangeNode/" + name, lagrangeNodeOperation(instanz, nearest));
+
+            final LocalSearch localSearch = new LocalSearch(instanz, index);
+            messe("localSearch/" + name, () -> {
+                localSearch.improve(nearest);
+                return localSearch.cost();
+            });
+
+            messeEinzeln("solve/" + name, () -> {
+                CFLP cflp = new CFLP(instanz, null, options);
+                cflp.run();
+                return cflp.getBestUpperBound();
+            });
+        }
+    }
+
+    /**
+     * Liest die Instanzdateien und erzeugt die Instanzen aus <code>--generated</code>.
+     *
+     * @param namen Ausgabe: die Namen der Instanzen in derselben Reihenfolge
+     * @return Die Instanzen, zuerst die aus den Dateien
+     */
+    private List<CFLPInstance> ladeInstanzen(List<String> namen) throws Exception {
+        List<CFLPInstance> instanzen = new ArrayList<>();
+
+        for (String f : files) {
+            namen.add(new File(f).getName());
+            instanzen.add(new CFLPInstanceReader(f).readInstance().instance);
+        }
+        if (!generated.isEmpty()) {
+            for (String groesse : generated.split(",")) {
+                String[] nm = groesse.split("x");
+                int n = Integer.parseInt(nm[0].trim());
+                int m = Integer.parseInt(nm[1].trim());
+                namen.add("gen-" + n + "x" + m);
+                CFLPGenerator generator = new CFLPGenerator();
+                generator.facilities = n;
+                generator.customers = m;
+                generator.seed = 42;
+                // Die Verteilungen der frueheren eigenen Erzeugung, damit die Instanzen
+                // (und damit die Messwerte) mit den alten Laeufen vergleichbar bleiben
+                generator.demand = new CFLPGenerator.Verteilung(CFLPGenerator.Art.UNIFORM, 1, 17);
+                generator.capacity = new CFLPGenerator.Verteilung(CFLPGenerator.Art.UNIFORM, 10, 29);
+                generator.opening = new CFLPGenerator.Verteilung(CFLPGenerator.Art.UNIFORM, 100, 399);
+                instanzen.add(generator.generate());
+            }
+        }
+
+        return instanzen;
+    }
+
+    /**
+     * Vergleicht {@link CFLPInstance#objectiveValue(int[])} mit der unabh&auml;ngigen
+     * {@link CFLPInstance#calcObjectiveValue(int[])} auf allen Instanzen. Gepr&uuml;ft
+     * werden die Zuordnung zur n&auml;chsten Facility, deren lokale Verbesserung, die
+     * L&ouml;sung der Suche (mit dem Zeitlimit der Optionen), alle Kunden an je einer
+     * Facility (meist mit &Uuml;berlauf) sowie zuf&auml;llige vollst&auml;ndige und
+     * Teill&ouml;sungen. Ein &Uuml;berlauf muss in beiden eine ArithmeticException sein.
+     *
+     * @return true, falls alle Werte &uuml;bereinstimmen
+     */
+    private boolean checkAll() throws Exception {
+
+        //=============== Variablen - START ==//
+
+        List<String> namen = new ArrayList<>();
+        List<CFLPInstance> instanzen = ladeInstanzen(namen);
+        boolean ok = true;
+
+        //=============== Variablen - END ==//
+
+        for (int k = 0; k < instanzen.size(); k++) {
+            CFLPInstance instanz = instanzen.get(k);
+            int n = instanz.getNumFacilities();
+            int m = instanz.getNumCustomers();
+            FacilityRankIndex index = new FacilityRankIndex(instanz);
+            List<int[]> zuordnungen = new ArrayList<>();
+            Random random = new Random(k);
+
+            int[] nearest = new int[m];
+            for (int j = 0; j < m; j++) {
+                nearest[j] = index.nearest(j);
+            }
+            zuordnungen.add(nearest);
+            zuordnungen.add(new LocalSearch(instanz, index).improve(nearest));
+
+            CFLP cflp = new CFLP(instanz, null, options);
+            cflp.run();
+            zuordnungen.add(cflp.getBestSolution().getBestSolution());
+
+            for (int i = 0; i < n; i++) {
+                int[] alle = new int[m];
+                Arrays.fill(alle, i);
+                zuordnungen.add(alle);
+            }
+            for (int r = 0; r < 200; r++) {
+                int[] zufall = new int[m];
+                for (int j = 0; j < m; j++) {
+                    zufall[j] = r % 2 == 1 && random.nextInt(3) == 0 ? -1 : random.nextInt(n);
+                }
+                zuordnungen.add(zufall);
+            }
+
+            int abweichungen = 0;
+            int ueberlauf = 0;
+            for (int[] zuordnung : zuordnungen) {
+                String schnell = wert(instanz, zuordnung, true);
+                String pruefung = wert(instanz, zuordnung, false);
+                if (!schnell.equals(pruefung)) {
+                    if (abweichungen == 0) {
+                        System.out.println("check/" + namen.get(k) + ": " + schnell + " statt " + pruefung
+                                + " fuer " + Arrays.toString(zuordnung));
+                    }
+                    abweichungen++;
+                } else if (pruefung.equals(UEBERLAUF)) {
+                    ueberlauf++;
+                }
+            }
+
+            System.out.println(String.format("%-34s %6d Zuordnungen %6d Ueberlauf %6d Abweichungen",
+                    "check/" + namen.get(k), zuordnungen.size(), ueberlauf, abweichungen));
+            ok &= abweichungen == 0;
+        }
+        return ok;
+    }
+
+    /**
+     * @return Der Zielfunktionswert als Text oder {@link #UEBERLAUF}
+     */
+    private static String wert(CFLPInstance instanz, int[] zuordnung, boolean schnell) {
+        try {
+            return String.valueOf(schnell ? instanz.objectiveValue(zuordnung) : instanz.calcObjectiveValue(zuordnung));
+        } catch (ArithmeticException e) {
+            return UEBERLAUF;
+        }
+    }
+
+    /**
+     * Ein Pfad durch den Suchbaum: alle Kunden nacheinander an zufaellige Facilities
+     * unter den 4 naehesten fixieren, in jedem Knoten beide Schranken, dann zurueck.
+     * Eine Operation sind m Knoten.
+     */
+    private Operation boundsOperation(CFLPInstance instanz, FacilityRankIndex index, int[] nearest) {
+        final int m = instanz.getNumCustomers();
+        final int[] facility = new int[m];
+        final CFLPSearchState state = new CFLPSearchState(instanz, nearest);
+        Random random = new Random(1);
+        for (int j = 0; j < m; j++) {
+            facility[j] = index.facility(j, random.nextInt(Math.min(4, instanz.getNumFacilities())));
+        }
+
+        return () -> {
+            long summe = 0;
+            for (int j = 0; j < m; j++) {
+                state.apply(j, facility[j]);
+                summe += state.lowerBound() + state.upperBound();
+            }
+            for (int j = 0; j < m; j++) {
+                state.undo();
+            }
+            return summe;
+        };
+    }
+
+    /**
+     * Die Lagrange-Schranke in einem Knoten, in dem ein Drittel der Kunden an der
+     * naehesten Facility fixiert ist, mit den Iterationen eines inneren Knotens.
+     */
+    private Operation lagrangeNodeOperation(CFLPInstance instanz, int[] nearest) {
+        final CFLPSearchState state = new CFLPSearchState(instanz, nearest);
+        final LagrangeBound lagrange = new LagrangeBound(instanz, nearest,
+                options.lagrangeRootIterations, options.lagrangeNodeIterations);
+
+        lagrange.bound(state, Integer.MAX_VALUE);
+        for (int j = 0; j < Math.max(1, instanz.getNumCustomers() / 3); j++) {
+            state.apply(j, nearest[j]);
+        }
+
+        return () -> lagrange.bound(state, Integer.MAX_VALUE);
+    }
+
+
+    //=============== Messung ==//
+
+    /**
+     * Misst eine Operation mit Iterationen fester Dauer.
+     */
+    private void messe(String name, Operation op) throws Exception {
+        if (!passt(name)) {
+            return;
+        }
+
+        for (int w = 0; w < warmup; w++) {
+            iteration(op, iterationMillis);
+        }
+
+        long[][] werte = new long[iterations][];
+        for (int k = 0; k < iterations; k++) {
+            werte[k] = iteration(op, iterationMillis);
+        }
+        ausgabe(name, "thrpt", werte);
+    }
+
+    /**
+     * Misst eine lange Operation einzeln: ein Aufwaermlauf, dann solveRuns Laeufe.
+     */
+    private void messeEinzeln(String name, Operation op) throws Exception {
+        if (!passt(name)) {
+            return;
+        }
+
+        iteration(op, 0);
+
+        long[][] werte = new long[solveRuns][];
+        for (int k = 0; k < solveRuns; k++) {
+            werte[k] = iteration(op, 0);
+        }
+        ausgabe(name, "ss", werte);
+    }
+
+    /**
+     * F&uuml;hrt die Operation so oft aus, bis millis vergangen sind (mindestens einmal).
+     *
+     * @return {Operationen, Nanosekunden, allozierte Bytes (-1 = unbekannt), GC Millisekunden}
+     */
+    private long[] iteration(Operation op, long millis) throws Exception {
+
+        //=============== Variablen - START ==//
+
+        long ops = 0;
+        long summe = 0;
+        long gcVorher = gcMillis();
+        long bytesVorher = allocatedBytes();
+        long start = System.nanoTime();
+        long ende = start + millis * 1000000L;
+        long jetzt;
+
+        //=============== Variablen - END ==//
+
+        do {
+            summe += op.run();
+            ops++;
+            jetzt = System.nanoTime();
+        } while (jetzt - ende < 0);
+
+        long bytesNachher = allocatedBytes();
+        long bytes = bytesVorher < 0 || bytesNachher < 0 ? -1 : bytesNachher - bytesVorher;
+        sink += summe;
+        return new long[]{ops, jetzt - start, bytes, gcMillis() - gcVorher};
+    }
+
+    private void ausgabe(String name, String modus, long[][] werte) {
+
+        //=============== Variablen - START ==//
+
+        double[] durchsatz = new double[werte.length];
+        double mittel = 0;
+        double varianz = 0;
+        long ops = 0, nanos = 0, bytes = 0, gc = 0;
+        boolean mitBytes = true;
+
+        //=============== Variablen - END ==//
+
+        for (int k = 0; k < werte.length; k++) {
+            durchsatz[k] = werte[k][0] * 1e9 / werte[k][1];
+            mittel += durchsatz[k] / werte.length;
+            ops += werte[k][0];
+            nanos += werte[k][1];
+            bytes += werte[k][2];
+            mitBytes &= werte[k][2] >= 0;
+            gc += werte[k][3];
+        }
+        for (double d : durchsatz) {
+            varianz += (d - mittel) * (d - mittel) / Math.max(1, werte.length - 1);
+        }
+
+        System.out.println(String.format("%-34s %5s %12.2f %10.2f %12.2f %12s %10s %8d",
+                name, modus, mittel, Math.sqrt(varianz), nanos / 1e3 / ops,
+                mitBytes ? String.format("%.0f", (double) bytes / ops) : "n/a",
+                mitBytes ? String.format("%.1f", bytes / 1048576.0 / (nanos / 1e9)) : "n/a",
+                gc));
+    }
+
+    private boolean passt(String name) {
+        return filter == null || filter.matcher(name).find();
+    }
+
+    /**
+     * @return Die vom messenden Thread allozierten Bytes oder -1, falls die JVM das
+     * nicht unterst&uuml;tzt oder die Messung abgeschaltet ist
+     */
+    private long allocatedBytes() {
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    private static long gcMillis() {
+        long summe = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            summe += Math.max(0, gc.getCollectionTime());
+        }
+        return summe;
+    }
+}
@@ -0,0 +1,223 @@
+package ad2.ss17.cflp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+
+/**
+ * Binaeres Format fuer Instanzdateien.
+ * <p>
+ * Aufbau, alle Werte als little-endian int:
+ * </p>
+ * <ul>
+ * <li>Kopf mit {@link #HEADER_INTS} Werten: Kennung {@link #MAGIC}, Version, Anordnung der
+ * Distanzen (0 = {@link CFLPInstance.DistanceLayout#CUSTOMER_MAJOR}, 1 = FACILITY_MAJOR),
+ * Schwellwert, Anzahl Facilities n, Anzahl Kunden m, distanceCosts, reserviert</li>
+ * <li>m Bandbreiten der Kunden</li>
+ * <li>n maximale Bandbreiten der Facilities</li>
+ * <li>n Errichtungskosten</li>
+ * <li>n * m Distanzen in der Anordnung aus dem Kopf</li>
+ * </ul>
+ * <p>
+ * Die Datei wird beim Laden read-only gemappt und mit einem Bulk-Get pro Array in die
+ * int[] der Instanz kopiert. Es wird nichts dekodiert, die Ladezeit ist im
+ * Wesentlichen ein memcpy der Datei aus dem Page Cache, den sich mehrere Prozesse
+ * teilen. {@link CFLPInstanceReader} erkennt das Format an der Kennung.
+ * </p>
+ * Konvertieren: <code>java ad2.ss17.cflp.CFLPBinaryFormat text binaer</code>
+ */
+public final class CFLPBinaryFormat {
+
+    /**
+     * Die ersten 4 Bytes der Datei: "CFLB"
+     */
+    public static final int MAGIC = 'C' | 'F' << 8 | 'L' << 16 | 'B' << 24;
+
+    /**
+     * Version des Formats
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * Anzahl der int Werte im Kopf
+     */
+    public static final int HEADER_INTS = 8;
+
+    // Die Distanzen werden in Fenstern dieser Groesse (ints) gemappt, ein Mapping ist hoechstens 2GB gross
+    private static final int FENSTER_INTS = 1 << 28;
+
+    private CFLPBinaryFormat() {
+    }
+
+    /**
+     * Konvertiert eine Instanz im Textformat in das binaere Format.
+     *
+     * @param args Textdatei und Zieldatei
+     * @throws IOException Falls eine Datei nicht gelesen oder geschrieben werden kann
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Aufruf: CFLPBinaryFormat <textdatei> <binaerdatei>");
+            System.exit(1);
+        }
+        write(new CFLPInstanceReader(args[0]).readInstance(), args[1]);
+    }
+
+    /**
+     * Prueft die Kennung am Anfang der Datei.
+     *
+     * @param filePath Die Datei
+     * @return true, falls die Datei im binaeren Format ist
+     * @throws IOException Falls die Datei nicht gelesen werden kann
+     */
+    public static boolean isBinary(String filePath) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            ByteBuffer kopf = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            while (kopf.hasRemaining() && channel.read(kopf) >= 0) {
+                // bis 4 Bytes gelesen sind oder die Datei endet
+            }
+            return !kopf.hasRemaining() && kopf.getInt(0) == MAGIC;
+        }
+    }
+
+    /**
+     * Schreibt eine Instanz im binaeren Format.
+     *
+     * @param instance Die Instanz mit Schwellwert
+     * @param filePath Die Zieldatei, wird ueberschrieben
+     * @throws IOException Falls die Datei nicht geschrieben werden kann
+     */
+    public static void write(CFLPInstanceReader.CFLPInstanceWithThreshold instance, String filePath) throws IOException {
+
+        //=============== Variablen - START ==//
+
+        CFLPInstance cflp = instance.instance;
+        int n = cflp.getNumFacilities();
+        int m = cflp.getNumCustomers();
+        long groesse = fileSize(n, m);
+
+        //=============== Variablen - END ==//
+
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+
+            long distanzStart = groesse - 4L * n * m;
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, 0, distanzStart);
+            IntBuffer ints = map.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+
+            ints.put(MAGIC);
+            ints.put(VERSION);
+            ints.put(cflp.getDistanceLayout() == CFLPInstance.DistanceLayout.CUSTOMER_MAJOR ? 0 : 1);
+            ints.put(instance.threshold);
+            ints.put(n);
+            ints.put(m);
+            ints.put(cflp.distanceCosts);
+            ints.put(0);
+
+            ints.put(cflp.bandwidths);
+            ints.put(cflp.maxBandwidths);
+            ints.put(cflp.openingCosts);
+            map.force();
+
+            int[] distances = cflp.rawDistances();
+            for (int pos = 0; pos < distances.length; pos += FENSTER_INTS) {
+                int anzahl = Math.min(FENSTER_INTS, distances.length - pos);
+                MappedByteBuffer fenster = channel.map(FileChannel.MapMode.READ_WRITE, distanzStart + 4L * pos, 4L * anzahl);
+                fenster.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().put(distances, pos, anzahl);
+                fenster.force();
+            }
+        }
+    }
+
+    /**
+     * Laedt eine Instanz im binaeren Format ueber ein read-only Mapping der Datei.
+     *
+     * @param filePath Die Datei
+     * @return Die Instanz mit Schwellwert
+     * @throws IOException Falls die Datei nicht gelesen werden kann oder nicht zum Format passt
+     */
+    public static CFLPInstanceReader.CFLPInstanceWithThreshold read(String filePath) throws IOException {
+        return read(filePath, null);
+    }
+
+    /**
+     * Laedt eine Instanz und rechnet dabei alle Bytes der Datei in einen Hash ein.
+     * Der Hash liest direkt aus den Mappings, die Datei wird nicht noch einmal gelesen.
+     *
+     * @param filePath Die Datei
+     * @param digest   Der Hash oder null
+     * @return Die Instanz mit Schwellwert
+     * @throws IOException Falls die Datei nicht gelesen werden kann oder nicht zum Format passt
+     */
+    static CFLPInstanceReader.CFLPInstanceWithThreshold read(String filePath, MessageDigest digest) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+
+            long groesse = channel.size();
+            if (groesse < HEADER_INTS * 4)
+                throw new IOException(filePath + ": Datei zu kurz");
+
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_INTS * 4);
+            if (digest != null)
+                digest.update(map.duplicate());
+            IntBuffer ints = map.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+
+            if (ints.get() != MAGIC)
+                throw new IOException(filePath + ": keine binaere Instanzdatei");
+            if (ints.get() != VERSION)
+                throw new IOException(filePath + ": unbekannte Version");
+
+            int layout = ints.get();
+            int threshold = ints.get();
+            int n = ints.get();
+            int m = ints.get();
+            int distanceCosts = ints.get();
+            ints.get();
+
+            if (n < 0 || m < 0 || layout < 0 || layout > 1 || groesse != fileSize(n, m))
+                throw new IOException(filePath + ": Kopf passt nicht zur Dateigroesse");
+            if ((long) n * m > Integer.MAX_VALUE - 8)
+                throw new IOException(filePath + ": Distanzmatrix zu gross fuer ein Array");
+
+            // Ein Bulk-Get pro Array, die Bytes werden ohne Dekodieren kopiert
+            long distanzStart = groesse - 4L * n * m;
+            map = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_INTS * 4, distanzStart - HEADER_INTS * 4);
+            if (digest != null)
+                digest.update(map.duplicate());
+            ints = map.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+
+            int[] bandwidths = new int[m];
+            int[] maxBandwidths = new int[n];
+            int[] openingCosts = new int[n];
+            int[] distances = new int[n * m];
+            ints.get(bandwidths);
+            ints.get(maxBandwidths);
+            ints.get(openingCosts);
+
+            for (int pos = 0; pos < distances.length; pos += FENSTER_INTS) {
+                int anzahl = Math.min(FENSTER_INTS, distances.length - pos);
+                MappedByteBuffer fenster = channel.map(FileChannel.MapMode.READ_ONLY, distanzStart + 4L * pos, 4L * anzahl);
+                if (digest != null)
+                    digest.update(fenster.duplicate());
+                fenster.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(distances, pos, anzahl);
+            }
+
+            return new CFLPInstanceReader.CFLPInstanceWithThreshold(
+                    new CFLPInstance(maxBandwidths, distanceCosts, openingCosts, bandwidths, distances,
+                            layout == 0 ? CFLPInstance.DistanceLayout.CUSTOMER_MAJOR : CFLPInstance.DistanceLayout.FACILITY_MAJOR),
+                    threshold);
+        }
+    }
+
+    /**
+     * @return Die Groesse einer Datei mit n Facilities und m Kunden in Bytes
+     */
+    private static long fileSize(int n, int m) {
+        return 4L * (HEADER_INTS + m + 2L * n + (long) n * m);
+    }
+}
@@ -0,0 +1,344 @@
+package ad2.ss17.cflp;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/**
+ * Erzeugt zufaellige Instanzen fuer Skalierungs- und Regressionstests.
+ * <p>
+ * Facilities liegen gleichverteilt in einem Quadrat, Kunden entweder ebenfalls
+ * gleichverteilt oder normalverteilt um einige Cluster-Zentren. Die Distanz ist der
+ * gerundete euklidische Abstand. Bandbreiten der Kunden, maximale Bandbreiten und
+ * Errichtungskosten der Facilities kommen aus einstellbaren Verteilungen. Mit
+ * gleichem Seed und gleichen Optionen entsteht immer dieselbe Instanz.
+ * </p>
+ * <p>
+ * Als Schwellwert wird das Ergebnis einer Heuristik geschrieben: jeder Kunde bei der
+ * naehesten Facility, danach die {@link LocalSearch}. Mit <code>--slack=p</code> liegt
+ * der Schwellwert p Prozent darueber.
+ * </p>
+ * Aufruf: <code>java ad2.ss17.cflp.CFLPGenerator [Optionen] datei</code>, Optionen:
+ * <ul>
+ * <li><code>--facilities=n</code>, <code>--customers=m</code> Groesse (50, 1000)</li>
+ * <li><code>--seed=s</code> Startwert des Zufallsgenerators (1)</li>
+ * <li><code>--geometry=uniform</code> oder <code>--geometry=clustered:k</code> Lage der Kunden</li>
+ * <li><code>--size=s</code> Seitenlaenge des Quadrats (200)</li>
+ * <li><code>--demand=</code>, <code>--capacity=</code>, <code>--opening=</code> Verteilungen der Bandbreiten,
+ * maximalen Bandbreiten und Errichtungskosten als <code>art:min:max</code> mit art
+ * uniform, normal oder exponential (uniform:5:12, uniform:10:25, uniform:100:400)</li>
+ * <li><code>--distance-costs=e</code> Kosten pro Distanzeinheit (10)</li>
+ * <li><code>--slack=p</code> Aufschlag auf den Schwellwert in Prozent (0)</li>
+ * <li><code>--binary</code> im Format {@link CFLPBinaryFormat} schreiben</li>
+ * </ul>
+ */
+public final class CFLPGenerator {
+
+    /**
+     * Art einer Verteilung
+     */
+    public enum Art {UNIFORM, NORMAL, EXPONENTIAL}
+
+    /**
+     * Ganzzahlige Verteilung auf [min, max].
+     * <p>
+     * UNIFORM ist gleichverteilt, NORMAL hat den Mittelwert in der Mitte und ein Sechstel
+     * der Breite als Standardabweichung, EXPONENTIAL beginnt bei min mit einem Viertel der
+     * Breite als Mittelwert. Werte ausserhalb werden auf den Bereich begrenzt.
+     * </p>
+     */
+    public static final class Verteilung {
+        final Art art;
+        final int min;
+        final int max;
+
+        public Verteilung(Art art, int min, int max) {
+            if (min > max)
+                throw new IllegalArgumentException("min > max");
+            this.art = art;
+            this.min = min;
+            this.max = max;
+        }
+
+        /**
+         * @param spec <code>art:min:max</code>, z.B. <code>normal:5:12</code>
+         * @return Die Verteilung
+         * @throws IllegalArgumentException Falls spec nicht passt
+         */
+        public static Verteilung parse(String spec) {
+            String[] teile = spec.split(":");
+            if (teile.length != 3)
+                throw new IllegalArgumentException("Verteilung als art:min:max erwartet: " + spec);
+            return new Verteilung(Art.valueOf(teile[0].toUpperCase()),
+                    Integer.parseInt(teile[1]), Integer.parseInt(teile[2]));
+        }
+
+        int sample(Random random) {
+            double breite = max - min;
+            double wert;
+            switch (art) {
+                case NORMAL:
+                    wert = min + breite / 2 + random.nextGaussian() * breite / 6;
+                    break;
+                case EXPONENTIAL:
+                    wert = min - Math.log(1 - random.nextDouble()) * breite / 4;
+                    break;
+                default:
+                    return min + random.nextInt(max - min + 1);
+            }
+            return (int) Math.max(min, Math.min(max, Math.round(wert)));
+        }
+    }
+
+    //=============== Einstellungen ==//
+
+    public int facilities = 50;
+    public int customers = 1000;
+    public long seed = 1;
+    public int clusters = 0;          // 0 = Kunden gleichverteilt
+    public int size = 200;
+    public int distanceCosts = 10;
+    public double slack = 0;
+    public boolean binary = false;
+
+    public Verteilung demand = new Verteilung(Art.UNIFORM, 5, 12);
+    public Verteilung capacity = new Verteilung(Art.UNIFORM, 10, 25);
+    public Verteilung opening = new Verteilung(Art.UNIFORM, 100, 400);
+
+
+    public static void main(String[] args) throws IOException {
+
+        //=============== Variablen - START ==//
+
+        CFLPGenerator generator = new CFLPGenerator();
+        String datei = null;
+
+        //=============== Variablen - END ==//
+
+        for (String a : args) {
+            if (!a.startsWith("--")) {
+                datei = a;
+            } else if (!generator.parseOption(a)) {
+                System.err.println("Unbekannte Option " + a);
+                System.exit(1);
+            }
+        }
+        if (datei == null) {
+            System.err.println("Aufruf: CFLPGenerator [Optionen] <datei>");
+            System.exit(1);
+        }
+
+        CFLPInstanceReader.CFLPInstanceWithThreshold instanz = generator.generateWithThreshold();
+        generator.write(instanz, datei);
+        System.out.println(datei + ": " + generator.facilities + " Facilities, " + generator.customers
+                + " Kunden, Schwellwert " + instanz.threshold);
+    }
+
+    /**
+     * Setzt eine Einstellung der Form <code>--name=wert</code>.
+     *
+     * @param arg Das Argument
+     * @return false, falls die Option unbekannt oder der Wert ungueltig ist
+     */
+    public boolean parseOption(String arg) {
+        if (arg.equals("--binary")) {
+            binary = true;
+            return true;
+        }
+
+        int gleich = arg.indexOf('=');
+        if (!arg.startsWith("--") || gleich < 0)
+            return false;
+
+        String name = arg.substring(2, gleich);
+        String wert = arg.substring(gleich + 1);
+        try {
+            switch (name) {
+                case "facilities":
+                    facilities = Integer.parseInt(wert);
+                    break;
+                case "customers":
+                    customers = Integer.parseInt(wert);
+                    break;
+                case "seed":
+                    seed = Long.parseLong(wert);
+                    break;
+                case "geometry":
+                    if (wert.equals("uniform")) {
+                        clusters = 0;
+                    } else if (wert.startsWith("clustered:")) {
+                        clusters = Integer.parseInt(wert.substring("clustered:".length()));
+                    } else {
+                        return false;
+                    }
+                    break;
+                case "size":
+                    size = Integer.parseInt(wert);
+                    break;
+                case "distance-costs":
+                    distanceCosts = Integer.parseInt(wert);
+                    break;
+                case "slack":
+                    slack = Double.parseDouble(wert);
+                    break;
+                case "demand":
+                    demand = Verteilung.parse(wert);
+                    break;
+                case "capacity":
+                    capacity = Verteilung.parse(wert);
+                    break;
+                case "opening":
+                    opening = Verteilung.parse(wert);
+                    break;
+                default:
+                    return false;
+            }
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        return facilities > 0 && customers > 0 && size > 0 && clusters >= 0;
+    }
+
+    /**
+     * Erzeugt die Instanz aus den Einstellungen.
+     *
+     * @return Die Instanz, Distanzen kundenweise
+     */
+    public CFLPInstance generate() {
+
+        //=============== Variablen - START ==//
+
+        int n = facilities;
+        int m = customers;
+        Random random = new Random(seed);
+
+        int[] maxBandwidths = new int[n];
+        int[] openingCosts = new int[n];
+        int[] bandwidths = new int[m];
+        int[] distances = new int[n * m];
+
+        double[] fx = new double[n], fy = new double[n];
+        double[] cx = new double[clusters], cy = new double[clusters];
+
+        // Streuung der Kunden um ihr Zentrum, die Cluster ueberlappen kaum
+        double streuung = clusters > 0 ? size / (4 * Math.sqrt(clusters)) : 0;
+
+        //=============== Variablen - END ==//
+
+        for (int i = 0; i < n; i++) {
+            fx[i] = random.nextDouble() * size;
+            fy[i] = random.nextDouble() * size;
+            maxBandwidths[i] = Math.max(1, capacity.sample(random));
+            openingCosts[i] = Math.max(0, opening.sample(random));
+        }
+        for (int k = 0; k < clusters; k++) {
+            cx[k] = random.nextDouble() * size;
+            cy[k] = random.nextDouble() * size;
+        }
+
+        for (int j = 0; j < m; j++) {
+            double x, y;
+            if (clusters > 0) {
+                int k = random.nextInt(clusters);
+                x = clamp(cx[k] + random.nextGaussian() * streuung);
+                y = clamp(cy[k] + random.nextGaussian() * streuung);
+            } else {
+                x = random.nextDouble() * size;
+                y = random.nextDouble() * size;
+            }
+            bandwidths[j] = Math.max(1, demand.sample(random));
+
+            for (int i = 0; i < n; i++) {
+                distances[j * n + i] = (int) Math.round(Math.hypot(x - fx[i], y - fy[i]));
+            }
+        }
+
+        return new CFLPInstance(maxBandwidths, distanceCosts, openingCosts, bandwidths, distances,
+                CFLPInstance.DistanceLayout.CUSTOMER_MAJOR);
+    }
+
+    /**
+     * Erzeugt die Instanz und berechnet den Schwellwert mit der Heuristik.
+     *
+     * @return Die Instanz mit Schwellwert
+     */
+    public CFLPInstanceReader.CFLPInstanceWithThreshold generateWithThreshold() {
+        CFLPInstance instanz = generate();
+        return new CFLPInstanceReader.CFLPInstanceWithThreshold(instanz, referenceThreshold(instanz));
+    }
+
+    /**
+     * Schwellwert aus der Heuristik: naeheste Facility fuer jeden Kunden, verbessert mit
+     * der lokalen Suche, plus slack Prozent.
+     *
+     * @param instanz Die Instanz
+     * @return Der Schwellwert
+     */
+    public int referenceThreshold(CFLPInstance instanz) {
+        FacilityRankIndex index = new FacilityRankIndex(instanz);
+        int[] nearest = new int[instanz.getNumCustomers()];
+        for (int j = 0; j < nearest.length; j++) {
+            nearest[j] = index.nearest(j);
+        }
+
+        LocalSearch localSearch = new LocalSearch(instanz, index);
+        localSearch.improve(nearest);
+        long kosten = (long) Math.ceil(localSearch.cost() * (1 + slack / 100));
+        return (int) Math.min(Integer.MAX_VALUE, kosten);
+    }
+
+    /**
+     * Schreibt die Instanz im Textformat von {@link CFLPInstanceReader} oder mit
+     * <code>--binary</code> im Format {@link CFLPBinaryFormat}.
+     *
+     * @param instanz  Die Instanz mit Schwellwert
+     * @param filePath Die Zieldatei, wird ueberschrieben
+     * @throws IOException Falls die Datei nicht geschrieben werden kann
+     */
+    public void write(CFLPInstanceReader.CFLPInstanceWithThreshold instanz, String filePath) throws IOException {
+        if (binary) {
+            CFLPBinaryFormat.write(instanz, filePath);
+            return;
+        }
+
+        CFLPInstance cflp = instanz.instance;
+        int n = cflp.getNumFacilities();
+        int m = cflp.getNumCustomers();
+
+        try (BufferedWriter out = Files.newBufferedWriter(Paths.get(filePath), StandardCharsets.US_ASCII)) {
+            out.write("THRESHOLD: " + instanz.threshold + "\n");
+            out.write("FACILITIES: " + n + "\n");
+            out.write("CUSTOMERS: " + m + "\n");
+            out.write("MAXBANDWIDTHS:" + liste(cflp.maxBandwidths) + "\n");
+            out.write("DISTANCECOSTS: " + cflp.distanceCosts + "\n");
+            out.write("OPENINGCOSTS:" + liste(cflp.openingCosts) + "\n");
+            out.write("\n#bandwidth; dist_0 dist_1 ...\n");
+
+            StringBuilder zeile = new StringBuilder();
+            for (int j = 0; j < m; j++) {
+                zeile.setLength(0);
+                zeile.append(cflp.bandwidths[j]).append(';');
+                for (int i = 0; i < n; i++) {
+                    zeile.append(' ').append(cflp.distance(i, j));
+                }
+                zeile.append('\n');
+                out.append(zeile);
+            }
+        }
+    }
+
+    private double clamp(double koordinate) {
+        return Math.max(0, Math.min(size, koordinate));
+    }
+
+    private static String liste(int[] werte) {
+        StringBuilder sb = new StringBuilder();
+        for (int w : werte) {
+            sb.append(' ').append(w);
+        }
+        return sb.toString();
+    }
+}
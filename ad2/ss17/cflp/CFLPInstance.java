@@ -6,33 +6,240 @@ import java.util.Arrays;
  * Speichert Instanzdaten des Capacitated Facility Location Problems
  */
 public class CFLPInstance {
+
+    /**
+     * Anordnung der Distanzmatrix im Speicher
+     */
+    public enum DistanceLayout {
+        /**
+         * Die Distanzen eines Kunden zu allen Facilities liegen hintereinander
+         */
+        CUSTOMER_MAJOR,
+        /**
+         * Die Distanzen einer Facility zu allen Kunden liegen hintereinander
+         */
+        FACILITY_MAJOR
+    }
+
     public final int distanceCosts;
 
     public int[] openingCosts;
     public int[] maxBandwidths;
     public int[] bandwidths;
-    public int[][] distances;
 
+    // Distanzmatrix flach in einem Array, Anordnung laut distanceLayout
+    private final int[] distances;
+    private final DistanceLayout distanceLayout;
+
+    // Index von distance(i, j) = i * facilityStride + j * customerStride
+    private final int facilityStride;
+    private final int customerStride;
+
+    /**
+     * Kennzeichnet Errichtungskosten, die nicht mehr in ein int passen.
+     */
+    public static final int COST_OVERFLOW = Integer.MAX_VALUE;
+
+    // Errichtungskosten pro Facility und Ausbaustufe, tierCosts[i][k] = factor(k, openingCosts[i]).
+    // Reicht bis zur Ausbaustufe der gesamten Bandbreite aller Kunden oder bis zum int Ueberlauf.
+    private final int[][] tierCosts;
+
+    // Summe aller Bandbreiten, bestimmt die Laenge der Tabellen in tierCosts
+    private long totalBandwidth;
+
+    /**
+     * @param distances Distanzen als [Facility][Kunde], werden kundenweise abgelegt
+     */
     public CFLPInstance(int[] maxBandwidths, int distanceCosts, int[] openingCosts, int[] bandwidths, int[][] distances) {
+        this(maxBandwidths, distanceCosts, openingCosts, bandwidths,
+                flatten(distances, openingCosts.length, bandwidths.length), DistanceLayout.CUSTOMER_MAJOR);
+    }
+
+    /**
+     * @param distances Distanzen als flaches Array in der Anordnung layout
+     * @param layout    Die Anordnung von distances
+     */
+    public CFLPInstance(int[] maxBandwidths, int distanceCosts, int[] openingCosts, int[] bandwidths, int[] distances,
+                        DistanceLayout layout) {
         this.maxBandwidths = maxBandwidths;
 
         this.distanceCosts = distanceCosts;
         this.openingCosts = openingCosts;
 
         this.bandwidths = bandwidths;
+
+        if (distances.length != openingCosts.length * bandwidths.length)
+            throw new IllegalArgumentException("Distanzmatrix passt nicht zur Anzahl der Facilities/Kunden");
+
         this.distances = distances;
+        this.distanceLayout = layout;
+        this.facilityStride = layout == DistanceLayout.CUSTOMER_MAJOR ? 1 : bandwidths.length;
+        this.customerStride = layout == DistanceLayout.CUSTOMER_MAJOR ? openingCosts.length : 1;
+
+        this.tierCosts = buildTierCosts();
     }
 
     public CFLPInstance(CFLPInstance other) {
+        this(other, other.distanceLayout);
+    }
+
+    /**
+     * Kopiert eine Instanz und legt die Distanzmatrix in der Anordnung layout ab.
+     */
+    public CFLPInstance(CFLPInstance other, DistanceLayout layout) {
         maxBandwidths = other.maxBandwidths;
         distanceCosts = other.distanceCosts;
 
         openingCosts = other.openingCosts.clone();
         bandwidths = other.bandwidths.clone();
-        distances = new int[openingCosts.length][bandwidths.length];
+
+        distanceLayout = layout;
+        facilityStride = layout == DistanceLayout.CUSTOMER_MAJOR ? 1 : bandwidths.length;
+        customerStride = layout == DistanceLayout.CUSTOMER_MAJOR ? openingCosts.length : 1;
+
+        if (layout == other.distanceLayout) {
+            distances = other.distances.clone();
+        } else {
+            distances = new int[other.distances.length];
+            for (int i = 0; i < openingCosts.length; ++i) {
+                for (int j = 0; j < bandwidths.length; ++j) {
+                    distances[i * facilityStride + j * customerStride] = other.distance(i, j);
+                }
+            }
+        }
+
+        tierCosts = buildTierCosts();
+    }
+
+    /**
+     * Berechnet fuer jede Facility die Errichtungskosten aller Ausbaustufen,
+     * die mit der gesamten Bandbreite aller Kunden erreicht werden koennen.
+     */
+    private int[][] buildTierCosts() {
+        totalBandwidth = 0;
+        for (int b : bandwidths) {
+            totalBandwidth += b;
+        }
+
+        int[][] costs = new int[openingCosts.length][];
         for (int i = 0; i < openingCosts.length; ++i) {
-            distances[i] = other.distances[i].clone();
+            costs[i] = tierCostRow(i);
+        }
+        return costs;
+    }
+
+    /**
+     * Die Errichtungskosten der Facility i fuer alle Ausbaustufen bis zur gesamten
+     * Bandbreite aller Kunden oder bis zum Ueberlauf.
+     */
+    private int[] tierCostRow(int i) {
+        int base = openingCosts[i];
+        long maxTier = Math.max(2, (totalBandwidth + maxBandwidths[i] - 1) / maxBandwidths[i]);
+
+        // Mit Basiskosten 0 kostet jede Stufe 0, siehe openingCost
+        if (base == 0) {
+            return new int[]{0};
+        }
+
+        // Gleiche Rekursion wie factor, aber iterativ und nur bis zum Ueberlauf.
+        // Der Ueberlauf kommt nach wenigen Dutzend Stufen, die Tabelle waechst
+        // daher bei Bedarf statt gleich fuer alle Stufen angelegt zu werden.
+        int laenge = (int) Math.min(maxTier, Integer.MAX_VALUE - 1) + 1;
+        int[] f = new int[Math.min(laenge, 64)];
+        long fib1 = 0;
+        long fib2 = 0;
+        int k = 0;
+        while (k < laenge) {
+            if (k == f.length) {
+                f = Arrays.copyOf(f, (int) Math.min(laenge, 2L * f.length));
+            }
+            long next = k < 3 ? factorSaturated(k, base) : fib1 + fib2 + (4 - k) * (long) base;
+            if (next >= COST_OVERFLOW || next < Integer.MIN_VALUE) {
+                // erste Stufe mit Ueberlauf mitnehmen, danach waechst die Folge nur noch
+                f[k++] = COST_OVERFLOW;
+                break;
+            }
+            f[k++] = (int) next;
+            fib1 = fib2;
+            fib2 = next;
+        }
+
+        return Arrays.copyOf(f, k);
+    }
+
+    /**
+     * &Auml;ndert die Errichtungskosten einer Facility. Nur die Tabelle der
+     * Ausbaustufen dieser Facility wird neu berechnet, O(Stufen). Nicht
+     * w&auml;hrend einer Suche auf der Instanz aufrufen.
+     *
+     * @param facilityIdx Der Index der Facility
+     * @param cost        Die neuen Basiskosten
+     */
+    public void setOpeningCost(int facilityIdx, int cost) {
+        openingCosts[facilityIdx] = cost;
+        tierCosts[facilityIdx] = tierCostRow(facilityIdx);
+    }
+
+    /**
+     * &Auml;ndert die Bandbreite eines Kunden. Die Tabellen der Ausbaustufen
+     * werden nur verl&auml;ngert, falls die gesamte Bandbreite eine Stufe
+     * &uuml;ber ihr Ende erreicht, O(n) plus die verl&auml;ngerten Tabellen.
+     * Nicht w&auml;hrend einer Suche auf der Instanz aufrufen.
+     *
+     * @param customerIdx Der Index des Kunden
+     * @param bandwidth   Die neue Bandbreite
+     */
+    public void setBandwidth(int customerIdx, int bandwidth) {
+        totalBandwidth += (long) bandwidth - bandwidths[customerIdx];
+        bandwidths[customerIdx] = bandwidth;
+
+        for (int i = 0; i < tierCosts.length; ++i) {
+            int[] costs = tierCosts[i];
+            if (costs[costs.length - 1] != COST_OVERFLOW && openingCosts[i] != 0 && tierOf(i, (int) Math.min(Integer.MAX_VALUE, totalBandwidth)) >= costs.length) {
+                tierCosts[i] = tierCostRow(i);
+            }
+        }
+    }
+
+    /**
+     * &Auml;ndert eine Distanz. Nicht w&auml;hrend einer Suche auf der Instanz aufrufen.
+     *
+     * @param facilityIdx Der Index der Facility
+     * @param customerIdx Der Index des Kunden
+     * @param distance    Die neue Distanz
+     */
+    public void setDistance(int facilityIdx, int customerIdx, int distance) {
+        distances[facilityIdx * facilityStride + customerIdx * customerStride] = distance;
+    }
+
+    /**
+     * Wie factor, aber mit {@link #COST_OVERFLOW} statt Exception bei int &Uuml;berlauf.
+     */
+    private static int factorSaturated(int k, int baseCosts) {
+        if (k < 3) {
+            return k == 0 ? 0 : k == 1 ? baseCosts : (int) Math.ceil(1.5 * baseCosts);
+        }
+        long fib1 = baseCosts;
+        long fib2 = (int) Math.ceil(1.5 * baseCosts);
+        for (int i = 3; i <= k; i++) {
+            long tmp = fib1 + fib2 + (4 - i) * (long) baseCosts;
+            if (tmp >= COST_OVERFLOW || tmp < Integer.MIN_VALUE) {
+                return COST_OVERFLOW;
+            }
+            fib1 = fib2;
+            fib2 = tmp;
+        }
+        return (int) fib2;
+    }
+
+    private static int[] flatten(int[][] distances, int numFacilities, int numCustomers) {
+        int[] flat = new int[numFacilities * numCustomers];
+        for (int i = 0; i < numFacilities; ++i) {
+            for (int j = 0; j < numCustomers; ++j) {
+                flat[j * numFacilities + i] = distances[i][j];
+            }
         }
+        return flat;
     }
 
     public int getNumCustomers() {
@@ -66,7 +273,75 @@ public class CFLPInstance {
      * @return Die Distanz zwischen Facility und Kunde
      */
     public int distance(int facilityIdx, int customerIdx) {
-        return distances[facilityIdx][customerIdx];
+        return distances[facilityIdx * facilityStride + customerIdx * customerStride];
+    }
+
+    /**
+     * @return Die Anordnung der Distanzmatrix im Speicher
+     */
+    public DistanceLayout getDistanceLayout() {
+        return distanceLayout;
+    }
+
+    /**
+     * Kopiert die Distanzen eines Kunden zu allen Facilities. Bei
+     * {@link DistanceLayout#CUSTOMER_MAJOR} ist das ein zusammenh&auml;ngender Block.
+     *
+     * @param customerIdx Der Index des Kunden
+     * @param dest        Ziel, mindestens {@link #getNumFacilities()} lang; dest[i] = distance(i, customerIdx)
+     */
+    public void customerDistances(int customerIdx, int[] dest) {
+        int n = getNumFacilities();
+        if (distanceLayout == DistanceLayout.CUSTOMER_MAJOR) {
+            System.arraycopy(distances, customerIdx * n, dest, 0, n);
+        } else {
+            for (int i = 0; i < n; ++i) {
+                dest[i] = distances[i * facilityStride + customerIdx];
+            }
+        }
+    }
+
+    /**
+     * Kopiert die Distanzen einer Facility zu allen Kunden. Bei
+     * {@link DistanceLayout#FACILITY_MAJOR} ist das ein zusammenh&auml;ngender Block.
+     *
+     * @param facilityIdx Der Index der Facility
+     * @param dest        Ziel, mindestens {@link #getNumCustomers()} lang; dest[j] = distance(facilityIdx, j)
+     */
+    public void facilityDistances(int facilityIdx, int[] dest) {
+        int m = getNumCustomers();
+        if (distanceLayout == DistanceLayout.FACILITY_MAJOR) {
+            System.arraycopy(distances, facilityIdx * m, dest, 0, m);
+        } else {
+            for (int j = 0; j < m; ++j) {
+                dest[j] = distances[facilityIdx + j * customerStride];
+            }
+        }
+    }
+
+    /**
+     * Direkter Zugriff auf die flache Distanzmatrix zum sequentiellen Lesen.
+     * Der Index von distance(i, j) ist {@code i * facilityStride() + j * customerStride()}.
+     * Das Array darf nicht ver&auml;ndert werden.
+     *
+     * @return Die Distanzmatrix in der Anordnung {@link #getDistanceLayout()}
+     */
+    public int[] rawDistances() {
+        return distances;
+    }
+
+    /**
+     * @return Abstand zwischen zwei Facilities desselben Kunden in {@link #rawDistances()}
+     */
+    public int facilityStride() {
+        return facilityStride;
+    }
+
+    /**
+     * @return Abstand zwischen zwei Kunden derselben Facility in {@link #rawDistances()}
+     */
+    public int customerStride() {
+        return customerStride;
     }
 
     /**
@@ -77,6 +352,79 @@ public class CFLPInstance {
         return openingCosts[facilityIdx];
     }
 
+    /**
+     * @param facilityIdx Der Index der Facility
+     * @param load        Die Bandbreite, die von der Facility bereitgestellt wird
+     * @return Die Ausbaustufe, die f&uuml;r load gebraucht wird; 0 falls load &lt;= 0
+     */
+    public int tierOf(int facilityIdx, int load) {
+        return load <= 0 ? 0 : (load - 1) / maxBandwidths[facilityIdx] + 1;
+    }
+
+    /**
+     * Errichtungskosten aus der vorberechneten Tabelle, O(1).
+     *
+     * @param facilityIdx Der Index der Facility
+     * @param load        Die Bandbreite, die von der Facility bereitgestellt wird
+     * @return Die Errichtungskosten oder {@link #COST_OVERFLOW}, falls sie nicht in ein int passen
+     */
+    public int openingCost(int facilityIdx, int load) {
+        int[] costs = tierCosts[facilityIdx];
+        int tier = tierOf(facilityIdx, load);
+        if (tier < costs.length) {
+            return costs[tier];
+        }
+        // nur bei mehr Bandbreite als alle Kunden zusammen, nach einem Ueberlauf oder
+        // bei Basiskosten 0
+        if (costs[costs.length - 1] == COST_OVERFLOW || openingCosts[facilityIdx] == 0) {
+            return costs[costs.length - 1];
+        }
+        return factorSaturated(tier, openingCosts[facilityIdx]);
+    }
+
+    /**
+     * Zus&auml;tzliche Errichtungskosten, wenn eine Facility bei aktueller Bandbreite
+     * load noch bandwidth dazubekommt, O(1). Mit negativer bandwidth entsprechend
+     * die (negative) &Auml;nderung beim Wegnehmen.
+     *
+     * @param facilityIdx Der Index der Facility
+     * @param load        Die aktuelle Bandbreite der Facility
+     * @param bandwidth   Die zus&auml;tzliche Bandbreite
+     * @return openingCost(facilityIdx, load + bandwidth) - openingCost(facilityIdx, load)
+     */
+    public int marginalOpeningCost(int facilityIdx, int load, int bandwidth) {
+        return openingCost(facilityIdx, load + bandwidth) - openingCost(facilityIdx, load);
+    }
+
+    /**
+     * Obere Schranke f&uuml;r {@link #marginalOpeningCost(int, int, int)} &uuml;ber alle
+     * Bandbreiten load mit minLoad &lt;= load und load + bandwidth &lt;= maxLoad. Beim
+     * Hinzuf&uuml;gen von bandwidth steigt die Ausbaustufe um h&ouml;chstens
+     * ceil(bandwidth / maxBandwidth), gepr&uuml;ft werden alle Stufen im Bereich, O(Stufen).
+     *
+     * @param facilityIdx Der Index der Facility
+     * @param minLoad     Die kleinste m&ouml;gliche Bandbreite vor dem Hinzuf&uuml;gen
+     * @param maxLoad     Die gr&ouml;&szlig;te m&ouml;gliche Bandbreite nach dem Hinzuf&uuml;gen
+     * @param bandwidth   Die zus&auml;tzliche Bandbreite
+     * @return Die obere Schranke oder {@link #COST_OVERFLOW}, falls Kosten im Bereich nicht in ein int passen
+     */
+    public int maxMarginalOpeningCost(int facilityIdx, int minLoad, int maxLoad, int bandwidth) {
+        int cap = maxBandwidths[facilityIdx];
+        int steps = bandwidth <= 0 ? 0 : (bandwidth - 1) / cap + 1;
+        int lastTier = tierOf(facilityIdx, maxLoad);
+
+        long max = 0;
+        for (int tier = tierOf(facilityIdx, minLoad); tier <= tierOf(facilityIdx, Math.max(minLoad, maxLoad - bandwidth)); tier++) {
+            int from = openingCost(facilityIdx, tier * cap);
+            int to = openingCost(facilityIdx, Math.min(tier + steps, lastTier) * cap);
+            if (from == COST_OVERFLOW || to == COST_OVERFLOW) {
+                return COST_OVERFLOW;
+            }
+            max = Math.max(max, (long) to - from);
+        }
+        return (int) max;
+    }
+
     /**
      * @param solution Eine (Teil-)L&ouml;sung für das CFLP.
      *                 Der Index des Array gibt den Kunden an, der Wert an dieser Position die zugeordnete Facility.
@@ -104,12 +452,77 @@ public class CFLPInstance {
                 sumCosts = Math.addExact(sumCosts, factor((int) Math.ceil(accBandwidths[solution[i]] / (double) maxBandwidths[solution[i]]), openingCosts[solution[i]]));
                 openedFacilities[solution[i]] = true;
             }
-            sumCosts = Math.addExact(sumCosts, distanceCosts * distance(solution[i], i));
+            sumCosts = Math.addExact(sumCosts, Math.multiplyExact(distanceCosts, distance(solution[i], i)));
         }
 
         return sumCosts;
     }
 
+    /**
+     * Der Zielfunktionswert wie {@link #calcObjectiveValue(int[])}, aber schnell f&uuml;r
+     * die Suche: ein Durchlauf &uuml;ber die Zuordnung ({@link #accumulate(int[], int[])}),
+     * die Errichtungskosten aus der Tabelle der Ausbaustufen und eine
+     * &Uuml;berlaufpr&uuml;fung am Ende. {@link #calcObjectiveValue(int[])} bleibt die
+     * unabh&auml;ngige Pr&uuml;fung der L&ouml;sungen, der {@link CFLPBenchmark} vergleicht
+     * beide mit <code>--check</code>.
+     *
+     * @param solution Eine (Teil-)L&ouml;sung, Werte kleiner 0 werden ignoriert
+     * @return Der Zielfunktionswert
+     * @throws ArithmeticException falls die Kosten nicht in ein int passen
+     */
+    int objectiveValue(int[] solution) {
+
+        if (solution.length != getNumCustomers())
+            throw new RuntimeException("Problem beim Ermitteln des Zielfunktionswertes (zu wenige/zu viele Kunden)");
+
+        int[] accBandwidths = new int[getNumFacilities()];
+        long sumCosts = distanceCosts * accumulate(solution, accBandwidths);
+
+        // Facilities ohne Bandbreite kosten nichts (Ausbaustufe 0)
+        for (int i = 0; i < accBandwidths.length; ++i) {
+            int costs = openingCost(i, accBandwidths[i]);
+            if (costs == COST_OVERFLOW) {
+                // wirft die ArithmeticException des Ueberlaufs
+                costs = factor(tierOf(i, accBandwidths[i]), openingCosts[i]);
+            }
+            sumCosts += costs;
+        }
+
+        if (sumCosts != (int) sumCosts)
+            throw new ArithmeticException("integer overflow");
+        return (int) sumCosts;
+    }
+
+    /**
+     * Summiert in einem Durchlauf &uuml;ber die Zuordnung die Bandbreite pro Facility
+     * und die Distanzen (ohne {@link #distanceCosts}). Kunden mit Wert kleiner 0 werden
+     * ignoriert. Die Summe ist ein long, eine &Uuml;berlaufpr&uuml;fung pro Kunde
+     * entf&auml;llt.
+     *
+     * @param solution Die (Teil-)L&ouml;sung
+     * @param loads    Ausgabe: Bandbreite pro Facility, L&auml;nge n, wird nicht geleert
+     * @return Die Summe der Distanzen, exakt
+     */
+    long accumulate(int[] solution, int[] loads) {
+        long sum = 0;
+        for (int j = 0; j < solution.length; ++j) {
+            int i = solution[j];
+            if (i < 0) continue;
+            loads[i] += bandwidths[j];
+            sum += distances[i * facilityStride + j * customerStride];
+        }
+        return sum;
+    }
+
+    /**
+     * Errichtungskosten der Ausbaustufe k, iterativ in O(k). F&uuml;r die Facilities
+     * der Instanz ist {@link #openingCost(int, int)} schneller.
+     *
+     * @param k         Die Ausbaustufe
+     * @param baseCosts Die Basiskosten der Facility
+     * @return Die Errichtungskosten
+     * @throws ArithmeticException falls die Kosten nicht in ein int passen
+     */
     public int factor(int k, int baseCosts) {
         switch (k) {
             case 0:
@@ -119,7 +532,14 @@ public class CFLPInstance {
             case 2:
                 return (int) Math.ceil(1.5 * baseCosts);
             default:
-                return Math.addExact(Math.addExact(factor(k - 1, baseCosts), factor(k - 2, baseCosts)), (4 - k) * baseCosts);
+                int fib1 = baseCosts;
+                int fib2 = (int) Math.ceil(1.5 * baseCosts);
+                for (int i = 3; i <= k; i++) {
+                    int tmp = Math.addExact(Math.addExact(fib2, fib1), (4 - i) * baseCosts);
+                    fib1 = fib2;
+                    fib2 = tmp;
+                }
+                return fib2;
         }
     }
 }
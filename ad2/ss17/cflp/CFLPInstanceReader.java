@@ -1,114 +1,352 @@
 package ad2.ss17.cflp;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
+/**
+ * Liest eine Instanzdatei.
+ * <p>
+ * Die Datei wird blockweise ueber einen {@link FileChannel} in einen ByteBuffer
+ * gelesen und Byte fuer Byte dekodiert: Schluesselwoerter werden direkt mit den
+ * Bytes verglichen, Zahlen beim Lesen aufaddiert. Es entstehen keine Strings pro
+ * Zeile, keine Regex Matcher und keine Arrays aus split(), der Speicherbedarf ist
+ * neben der Instanz nur der Puffer.
+ * </p>
+ * <p>
+ * Format: die Zeilen THRESHOLD, FACILITIES, CUSTOMERS, MAXBANDWIDTHS,
+ * DISTANCECOSTS und OPENINGCOSTS, danach eine Zeile <code>bandbreite; d_0 d_1 ...</code>
+ * pro Kunde. Leere Zeilen und Zeilen, die mit <code>#</code> beginnen, werden
+ * ueberlesen.
+ * </p>
+ * <p>
+ * Dateien im binaeren Format ({@link CFLPBinaryFormat}) werden an der Kennung erkannt
+ * und gemappt statt geparst.
+ * </p>
+ * Mit {@link #setFingerprint(boolean)} wird beim Lesen zusaetzlich der SHA-256 Hash
+ * aller Bytes der Datei berechnet, ohne die Datei ein zweites Mal zu lesen.
+ */
 public class CFLPInstanceReader {
     public static class CFLPInstanceWithThreshold {
         public CFLPInstance instance;
         public int threshold;
 
+        /**
+         * SHA-256 der Datei als Hex-String, null falls nicht berechnet
+         */
+        public String fingerprint;
+
         public CFLPInstanceWithThreshold(CFLPInstance instance, int threshold) {
             this.instance = instance;
             this.threshold = threshold;
         }
     }
 
-    private static Pattern THRESHOLD_PATTERN = Pattern.compile("THRESHOLD:\\s*([0-9]+)");
-
-    private static Pattern FACILITIES_PATTERN = Pattern.compile("FACILITIES:\\s*([0-9]+)");
+    // Groesse des Lesepuffers
+    private static final int PUFFER_GROESSE = 1 << 16;
 
-    private static Pattern CUSTOMERS_PATTERN = Pattern.compile("CUSTOMERS:\\s*([0-9]+)");
+    private String filePath;
+    private boolean fingerprint;
 
-    private static Pattern MAX_BANDWIDTHS_PATTERN = Pattern.compile("MAXBANDWIDTHS:\\s*([0-9\\s]+)");
+    //=============== Zustand beim Lesen ==//
 
-    private static Pattern OPENINGCOSTS_PATTERN = Pattern.compile("OPENINGCOSTS:\\s*([0-9\\s]+)");
-    private static Pattern DISTANCECOSTS_PATTERN = Pattern.compile("DISTANCECOSTS:\\s*([0-9]+)");
+    private FileChannel channel;
+    private ByteBuffer buffer;
 
-    private String filePath;
+    // Das Array hinter buffer, gelesen wird direkt von pos bis limit
+    private byte[] bytes;
+    private int pos;
+    private int limit;
+    private int zeile;
+    private boolean dateiAnfang;
+    private MessageDigest digest;
 
     public CFLPInstanceReader(String filePath) {
         this.filePath = filePath;
     }
 
+    /**
+     * @param fingerprint true, falls beim Lesen der Hash der Datei berechnet werden soll
+     */
+    public void setFingerprint(boolean fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
     public CFLPInstanceWithThreshold readInstance() throws IOException {
-        BufferedReader reader = new BufferedReader(new FileReader(filePath)) {
-            @Override
-            public String readLine() throws IOException {
-                String l = super.readLine();
-                while (l.startsWith("#") || l.trim().isEmpty())
-                    l = super.readLine();
-                return l;
+        this.digest = this.fingerprint ? newDigest() : null;
+        try {
+            CFLPInstanceWithThreshold result;
+            if (CFLPBinaryFormat.isBinary(filePath)) {
+                result = CFLPBinaryFormat.read(filePath, digest);
+            } else {
+                result = readText();
             }
-        };
+            if (digest != null)
+                result.fingerprint = hex(digest.digest());
+            return result;
+        } finally {
+            this.digest = null;
+        }
+    }
 
-        Matcher m;
-        String line;
+    private CFLPInstanceWithThreshold readText() throws IOException {
+        try (FileChannel c = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            this.channel = c;
+            this.buffer = ByteBuffer.allocate(PUFFER_GROESSE);
+            this.bytes = this.buffer.array();
+            this.pos = 0;
+            this.limit = 0;
+            this.zeile = 1;
+            this.dateiAnfang = true;
+            CFLPInstanceWithThreshold result = parse();
 
-        line = reader.readLine();
-        m = THRESHOLD_PATTERN.matcher(line);
-        m.matches();
-        int threshold = Integer.parseInt(m.group(1));
+            // Der Rest der Datei gehoert auch zum Hash
+            if (digest != null) {
+                while (fill()) {
+                    // fill() aktualisiert den Hash
+                }
+            }
+            return result;
+        } finally {
+            this.channel = null;
+            this.buffer = null;
+            this.bytes = null;
+        }
+    }
 
-        line = reader.readLine();
-        m = FACILITIES_PATTERN.matcher(line);
-        m.matches();
-        int numFacilities = Integer.parseInt(m.group(1));
+    /**
+     * @return Ein neuer SHA-256 Hash
+     */
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // jede Java Plattform muss SHA-256 anbieten
+            throw new IllegalStateException(e);
+        }
+    }
 
-        line = reader.readLine();
-        m = CUSTOMERS_PATTERN.matcher(line);
-        m.matches();
-        int numCustomers = Integer.parseInt(m.group(1));
+    /**
+     * @return Die Bytes als Hex-String in Kleinbuchstaben
+     */
+    static String hex(byte[] hash) {
+        StringBuilder sb = new StringBuilder(2 * hash.length);
+        for (byte b : hash) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+    private CFLPInstanceWithThreshold parse() throws IOException {
 
-        line = reader.readLine();
-        m = MAX_BANDWIDTHS_PATTERN.matcher(line);
-        m.matches();
-        int[] baseBandwidths = parseIntList(m.group(1).split("\\s+"), numFacilities);
+        int threshold = readHeader("THRESHOLD");
+        int numFacilities = readHeader("FACILITIES");
+        int numCustomers = readHeader("CUSTOMERS");
 
-        line = reader.readLine();
-        m = DISTANCECOSTS_PATTERN.matcher(line);
-        m.matches();
-        int distanceCosts = Integer.parseInt(m.group(1));
+        nextLine();
+        expectKeyword("MAXBANDWIDTHS");
+        int[] baseBandwidths = parseIntList(numFacilities);
 
-        line = reader.readLine();
-        m = OPENINGCOSTS_PATTERN.matcher(line);
-        m.matches();
-        int[] openingCosts = parseIntList(m.group(1).split("\\s+"), numFacilities);
+        int distanceCosts = readHeader("DISTANCECOSTS");
 
+        nextLine();
+        expectKeyword("OPENINGCOSTS");
+        int[] openingCosts = parseIntList(numFacilities);
 
         int[] bandwidths = new int[numCustomers];
-        int[][] distances = new int[numFacilities][numCustomers];
+        // Die Datei ist kundenweise aufgebaut, daher direkt CUSTOMER_MAJOR
+        int[] distances = new int[numFacilities * numCustomers];
         for (int i = 0; i < numCustomers; ++i) {
-            line = reader.readLine();
-            String[] xs = line.split("; +", 2);
-            bandwidths[i] = Integer.parseInt(xs[0]);
-            String[] distancesStrs = xs[1].split("\\s+");
+            nextLine();
+            bandwidths[i] = readInt();
 
-            if (distancesStrs.length != numFacilities)
-                throw new IOException("Anzahl der Distanzen pro Kunde muss der Anzahl der Facilities entsprechen");
+            skipBlanks();
+            if (read() != ';')
+                throw error("';' nach der Bandbreite erwartet");
 
+            int offset = i * numFacilities;
             for (int j = 0; j < numFacilities; ++j) {
-                distances[j][i] = Integer.parseInt(distancesStrs[j]);
+                if (!hasIntOnLine())
+                    throw error("Anzahl der Distanzen pro Kunde muss der Anzahl der Facilities entsprechen");
+                distances[offset + j] = readInt();
             }
+            if (hasIntOnLine())
+                throw error("Anzahl der Distanzen pro Kunde muss der Anzahl der Facilities entsprechen");
         }
 
-        reader.close();
-        return new CFLPInstanceWithThreshold(new CFLPInstance(baseBandwidths, distanceCosts, openingCosts, bandwidths, distances),
+        return new CFLPInstanceWithThreshold(new CFLPInstance(baseBandwidths, distanceCosts, openingCosts, bandwidths, distances,
+                CFLPInstance.DistanceLayout.CUSTOMER_MAJOR),
                 threshold
         );
     }
 
-    private int[] parseIntList(String[] intStrs, int num) throws IOException {
-        if (intStrs.length != num)
-            throw new IOException("Falsche Anzahl an Ganzzahlen");
+    /**
+     * Liest eine Zeile <code>NAME: zahl</code>.
+     */
+    private int readHeader(String keyword) throws IOException {
+        nextLine();
+        expectKeyword(keyword);
+        int value = readInt();
+        if (hasIntOnLine())
+            throw error("Nur eine Zahl nach " + keyword + " erwartet");
+        return value;
+    }
 
+    private int[] parseIntList(int num) throws IOException {
         int[] res = new int[num];
         for (int i = 0; i < num; ++i) {
-            res[i] = Integer.parseInt(intStrs[i]);
+            if (!hasIntOnLine())
+                throw error("Falsche Anzahl an Ganzzahlen");
+            res[i] = readInt();
         }
+        if (hasIntOnLine())
+            throw error("Falsche Anzahl an Ganzzahlen");
         return res;
     }
+
+    //=============== Byte Ebene ==//
+
+    /**
+     * @return Das naechste Byte ohne es zu lesen, -1 am Dateiende
+     */
+    private int peek() throws IOException {
+        if (pos == limit && !fill()) {
+            return -1;
+        }
+        return bytes[pos] & 0xff;
+    }
+
+    private int read() throws IOException {
+        int c = peek();
+        if (c >= 0)
+            pos++;
+        if (c == '\n')
+            zeile++;
+        return c;
+    }
+
+    /**
+     * Liest den naechsten Block der Datei in den Puffer.
+     *
+     * @return false am Dateiende
+     */
+    private boolean fill() throws IOException {
+        int gelesen;
+        buffer.clear();
+        do {
+            gelesen = channel.read(buffer);
+        } while (gelesen == 0);
+        pos = 0;
+        limit = Math.max(0, gelesen);
+        if (digest != null && limit > 0)
+            digest.update(bytes, 0, limit);
+        return gelesen > 0;
+    }
+
+    /**
+     * Ueberliest Leerzeichen, Tabulatoren und '\r', aber nicht das Zeilenende.
+     */
+    private void skipBlanks() throws IOException {
+        int c = peek();
+        while (c == ' ' || c == '\t' || c == '\r') {
+            pos++;
+            c = peek();
+        }
+    }
+
+    /**
+     * Beendet die aktuelle Zeile (der Rest muss leer sein, ausser am Anfang der Datei)
+     * und ueberliest leere Zeilen und Kommentare bis zum Beginn der naechsten Zeile mit Inhalt.
+     */
+    private void nextLine() throws IOException {
+        skipBlanks();
+        int c = peek();
+        if (c >= 0 && c != '\n' && !dateiAnfang)
+            throw error("Unerwartetes Zeichen '" + (char) c + "'");
+        dateiAnfang = false;
+
+        while (true) {
+            skipBlanks();
+            c = peek();
+            if (c == '\n') {
+                read();
+            } else if (c == '#') {
+                while (c >= 0 && c != '\n')
+                    c = read();
+            } else if (c < 0) {
+                throw error("Unerwartetes Dateiende");
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Vergleicht das Schluesselwort Byte fuer Byte, danach muss ':' folgen.
+     */
+    private void expectKeyword(String keyword) throws IOException {
+        for (int k = 0; k < keyword.length(); k++) {
+            if (read() != keyword.charAt(k))
+                throw error(keyword + ": erwartet");
+        }
+        skipBlanks();
+        if (read() != ':')
+            throw error(keyword + ": erwartet");
+    }
+
+    /**
+     * @return true, falls in der aktuellen Zeile noch eine Zahl folgt
+     */
+    private boolean hasIntOnLine() throws IOException {
+        skipBlanks();
+        int c = peek();
+        return (c >= '0' && c <= '9') || c == '-';
+    }
+
+    /**
+     * Liest eine Ganzzahl nach optionalen Leerzeichen, ohne String.
+     */
+    private int readInt() throws IOException {
+
+        //=============== Variablen - START ==//
+
+        boolean negativ = false;
+        long wert = 0;
+        int ziffern = 0;
+        int c;
+
+        //=============== Variablen - END ==//
+
+        skipBlanks();
+        if (peek() == '-') {
+            negativ = true;
+            pos++;
+        }
+
+        c = peek();
+        while (c >= '0' && c <= '9') {
+            wert = wert * 10 + (c - '0');
+            if (wert > Integer.MAX_VALUE + 1L)
+                throw error("Zahl zu gross");
+            ziffern++;
+            pos++;
+            c = peek();
+        }
+
+        if (ziffern == 0)
+            throw error("Ganzzahl erwartet");
+        if (negativ)
+            wert = -wert;
+        if (wert > Integer.MAX_VALUE)
+            throw error("Zahl zu gross");
+        return (int) wert;
+    }
+
+    private IOException error(String msg) {
+        return new IOException(filePath + ":" + zeile + ": " + msg);
+    }
 }
@@ -0,0 +1,231 @@
+package ad2.ss17.cflp;
+
+/**
+ * Einstellungen fuer die Suche in {@link CFLP}.
+ * <p>
+ * Die Optionen werden ueber die Kommandozeile in der Form {@code --name=wert}
+ * gesetzt, siehe {@link #parseOption(String)}. Ohne Angabe gelten die Defaults.
+ * </p>
+ */
+public class CFLPOptions {
+
+    /**
+     * Die untere Schranke, die in der Suche verwendet wird
+     */
+    public enum Bound {
+        /**
+         * Distanz zur naehesten Facility plus Errichtungskosten der fixierten Kunden
+         */
+        SIMPLE,
+        /**
+         * Zusaetzlich Lagrange-Relaxation der Zuordnungsbedingungen, falls die
+         * einfache Schranke nicht abschneidet
+         */
+        LAGRANGE
+    }
+
+    /**
+     * Die Reihenfolge, in der die Knoten abgearbeitet werden
+     */
+    public enum Search {
+        /**
+         * Tiefensuche, naeheste Facility zuerst
+         */
+        DFS,
+        /**
+         * Knoten mit der kleinsten unteren Schranke zuerst, bei vollem Knotenspeicher
+         * werden neue Teilbaeume per Tiefensuche abgearbeitet
+         */
+        BESTFIRST,
+        /**
+         * Verzweigung ueber Facilities (offen/geschlossen), fuer jede vollstaendig
+         * entschiedene Menge offener Facilities eine Tiefensuche ueber die Kunden
+         */
+        FACILITY
+    }
+
+    /**
+     * Die Reihenfolge, in der die Kunden fixiert werden, siehe {@link CustomerOrder}
+     */
+    public enum Order {
+        /**
+         * Reihenfolge der Eingabedatei
+         */
+        FILE,
+        /**
+         * Groesste Bandbreite zuerst
+         */
+        BANDWIDTH,
+        /**
+         * Groesster Regret zuerst: Distanzkosten zur zweitnaehesten minus zur naehesten Facility
+         */
+        REGRET,
+        /**
+         * Kunden mit den wenigsten sinnvollen Alternativen zuerst
+         */
+        CONSTRAINED,
+        /**
+         * In jedem Knoten der freie Kunde mit dem groessten Regret bei den
+         * Grenzkosten der aktuellen fixierten Bandbreiten
+         */
+        DYNAMIC
+    }
+
+    public Bound bound = Bound.LAGRANGE;
+
+    public Search search = Search.DFS;
+
+    public Order order = Order.FILE;
+
+    /**
+     * Zeitlimit in Millisekunden, 0 = unbegrenzt. Die Suche beendet sich selbst,
+     * siehe {@link CFLP#setDeadline(long)}.
+     */
+    public long timeLimit = 30000;
+
+    /**
+     * Am Ende des Zeitlimits so viele Millisekunden nur noch die beste Loesung verbessern
+     * (hoechstens ein Viertel der Zeit)
+     */
+    public long polishTime = 1000;
+
+    /**
+     * Die Uhr wird nur alle so viele Knoten pro Worker abgefragt, nach einer
+     * Lagrange-Schranke immer
+     */
+    public int checkInterval = 1024;
+
+    /**
+     * Neue Loesungen mit der lokalen Suche verbessern, siehe {@link LocalSearch}
+     */
+    public boolean localSearch = true;
+
+    /**
+     * ADD, DROP und MARGINAL vor der Suche fuer die erste obere Schranke, siehe
+     * {@link ConstructionHeuristics}
+     */
+    public boolean construction = true;
+
+    /**
+     * Symmetrische Facilities und austauschbare Kunden nur in einer Reihenfolge durchsuchen
+     */
+    public boolean symmetry = true;
+
+    /**
+     * Dominierte Facilities eines Kunden ueberspringen, siehe CFLP#dominanzSchwelle
+     */
+    public boolean dominance = true;
+
+    /**
+     * Kandidatenliste: pro Kunde nur die k naehesten Facilities im Index, 0 = alle,
+     * {@link #CANDIDATES_AUTO} = k aus dem Verhaeltnis von Kapazitaet zu Bedarf.
+     * Die Liste wird pro Kunde verlaengert, falls sonst eine optimale Loesung fehlen
+     * koennte, siehe {@link FacilityRankIndex}.
+     */
+    public int candidates = 0;
+
+    /**
+     * Wert von {@link #candidates} fuer <code>--candidates=auto</code>
+     */
+    public static final int CANDIDATES_AUTO = -1;
+
+    /**
+     * Maximale Anzahl gespeicherter Knoten der Best-First-Suche (ca. 32 Byte pro Knoten)
+     */
+    public int nodeLimit = 1 << 20;
+
+    /**
+     * Subgradienten-Iterationen in der Wurzel
+     */
+    public int lagrangeRootIterations = 100;
+
+    /**
+     * Subgradienten-Iterationen in allen anderen Knoten
+     */
+    public int lagrangeNodeIterations = 5;
+
+
+    /**
+     * Setzt eine Option der Form {@code --name=wert}.
+     *
+     * @param arg Das Argument von der Kommandozeile
+     * @return false, falls die Option unbekannt oder der Wert ungueltig ist
+     */
+    public boolean parseOption(String arg) {
+        if (!arg.startsWith("--") || arg.indexOf('=') < 0) {
+            return false;
+        }
+
+        String name = arg.substring(2, arg.indexOf('='));
+        String value = arg.substring(arg.indexOf('=') + 1);
+
+        try {
+            switch (name) {
+                case "bound":
+                    bound = Bound.valueOf(value.toUpperCase());
+                    return true;
+                case "search":
+                    search = Search.valueOf(value.toUpperCase());
+                    return true;
+                case "order":
+                    order = Order.valueOf(value.toUpperCase());
+                    return true;
+                case "time-limit":
+                    timeLimit = Long.parseLong(value);
+                    return true;
+                case "polish-time":
+                    polishTime = Long.parseLong(value);
+                    return true;
+                case "check-interval":
+                    checkInterval = Math.max(1, Integer.parseInt(value));
+                    return true;
+                case "local-search":
+                    localSearch = parseSchalter(value);
+                    return true;
+                case "construction":
+                    construction = parseSchalter(value);
+                    return true;
+                case "symmetry":
+                    symmetry = parseSchalter(value);
+                    return true;
+                case "dominance":
+                    dominance = parseSchalter(value);
+                    return true;
+                case "candidates":
+                    candidates = "auto".equals(value) ? CANDIDATES_AUTO : Math.max(0, Integer.parseInt(value));
+                    return true;
+                case "node-limit":
+                    nodeLimit = Integer.parseInt(value);
+                    return true;
+                case "lagrange-root-iterations":
+                    lagrangeRootIterations = Integer.parseInt(value);
+                    return true;
+                case "lagrange-node-iterations":
+                    lagrangeNodeIterations = Integer.parseInt(value);
+                    return true;
+                default:
+                    return false;
+            }
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @param value on/off bzw. true/false
+     * @return Der Wert des Schalters
+     * @throws IllegalArgumentException bei einem anderen Wert
+     */
+    private static boolean parseSchalter(String value) {
+        switch (value.toLowerCase()) {
+            case "on":
+            case "true":
+                return true;
+            case "off":
+            case "false":
+                return false;
+            default:
+                throw new IllegalArgumentException(value);
+        }
+    }
+}
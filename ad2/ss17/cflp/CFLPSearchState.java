@@ -0,0 +1,388 @@
+package ad2.ss17.cflp;
+
+import java.util.Arrays;
+
+/**
+ * Inkrementeller Zustand eines Pfades im Suchbaum.
+ * <p>
+ * Fuer jede Facility werden die Bandbreite der fixierten Kunden und die Bandbreite
+ * der Greedy-Vervollstaendigung (nicht fixierte Kunden bei der naehesten Facility)
+ * mitgefuehrt, dazu die Summen der Distanzen und der Errichtungskosten. Das
+ * Fixieren eines Kunden ({@link #apply(int, int)}) und das Zuruecknehmen beim
+ * Backtracking ({@link #undo()}) aendern nur ein bis zwei Facilities und kosten
+ * damit unabhaengig von der Instanzgroesse O(1). Die alten Werte werden auf einem
+ * Trail gespeichert, damit undo nichts neu berechnen muss.
+ * </p>
+ * <p>
+ * Die Belegung wird in-place in einem Array gehalten: fixierte Kunden stehen bei
+ * ihrer Facility, alle anderen bei der naehesten. Damit ist das Array immer die
+ * Greedy-Vervollstaendigung und das Expandieren eines Knotens alloziert nichts.
+ * </p>
+ * Jeder Worker der Suche hat seinen eigenen Zustand.
+ */
+final class CFLPSearchState {
+
+    private final CFLPInstance cflp;
+
+    // naeheste Facility fuer jeden Kunden
+    private final int[] nearest;
+
+    // Belegung Kunde -> Facility, nicht fixierte Kunden bei der naehesten Facility
+    private final int[] assignment;
+
+    // Ist der Kunde fixiert?
+    private final boolean[] fixed;
+
+    // Bandbreite der fixierten Kunden pro Facility
+    private final int[] fixedLoad;
+
+    // Anzahl der fixierten Kunden pro Facility
+    private final int[] fixedCount;
+
+    // Bandbreite der nicht fixierten Kunden
+    private long freeBandwidth;
+
+    // Bandbreite der Greedy-Vervollstaendigung pro Facility
+    private final int[] greedyLoad;
+
+    // Errichtungskosten der fixierten bzw. vervollstaendigten Belegung
+    private long fixedOpening;
+    private long greedyOpening;
+
+    // Distanzsumme der fixierten Kunden und der nicht fixierten Kunden zur naehesten Facility
+    private long fixedDist;
+    private long restNearestDist;
+
+    // Lagrange-Schranke mit den Multiplikatoren dieses Pfades, null falls nicht verwendet
+    private LagrangeBound lagrange;
+
+    // Lokale Suche fuer neue Loesungen, null falls nicht verwendet
+    private LocalSearch localSearch;
+
+    // Knoten bis zur naechsten Zeitpruefung
+    private int bisZurZeitpruefung;
+
+    // Zaehler seit der letzten Uebertragung an die SearchStatistics
+    private final long[] knotenProTiefe;
+    private long abgeschnitten;
+
+    //=============== Trail ==//
+
+    private int depth;
+    private final int[] trailCustomer;
+    private final int[] trailFacility;
+    private final int[] trailFixedCost;     // alte Errichtungskosten der fixierten Facility
+    private final int[] trailGreedyCostTo;  // alte Greedy Errichtungskosten der fixierten Facility
+    private final int[] trailGreedyCostFrom; // alte Greedy Errichtungskosten der naehesten Facility
+
+
+    /**
+     * Erzeugt den Zustand der Wurzel: kein Kunde ist fixiert, alle Kunden sind
+     * in der Vervollstaendigung bei ihrer naehesten Facility.
+     *
+     * @param cflp    Die Probleminstanz
+     * @param nearest Die naeheste Facility fuer jeden Kunden
+     */
+    CFLPSearchState(CFLPInstance cflp, int[] nearest) {
+        int n = cflp.getNumFacilities();
+        int m = cflp.getNumCustomers();
+
+        this.cflp = cflp;
+        this.nearest = nearest;
+        this.assignment = nearest.clone();
+        this.fixed = new boolean[m];
+        this.fixedLoad = new int[n];
+        this.fixedCount = new int[n];
+        this.greedyLoad = new int[n];
+
+        this.trailCustomer = new int[m];
+        this.trailFacility = new int[m];
+        this.trailFixedCost = new int[m];
+        this.trailGreedyCostTo = new int[m];
+        this.trailGreedyCostFrom = new int[m];
+        this.knotenProTiefe = new long[m + 1];
+
+        for (int j = 0; j < m; j++) {
+            greedyLoad[nearest[j]] += cflp.bandwidths[j];
+            freeBandwidth += cflp.bandwidths[j];
+            restNearestDist += cflp.distance(nearest[j], j);
+        }
+        for (int i = 0; i < n; i++) {
+            greedyOpening += openingCost(i, greedyLoad[i]);
+        }
+    }
+
+    /**
+     * Kopiert einen Zustand, z.B. fuer einen abgespaltenen Teilbaum.
+     */
+    CFLPSearchState(CFLPSearchState other) {
+        this.cflp = other.cflp;
+        this.nearest = other.nearest;
+        this.assignment = other.assignment.clone();
+        this.fixed = other.fixed.clone();
+        this.fixedLoad = other.fixedLoad.clone();
+        this.fixedCount = other.fixedCount.clone();
+        this.freeBandwidth = other.freeBandwidth;
+        this.greedyLoad = other.greedyLoad.clone();
+        this.fixedOpening = other.fixedOpening;
+        this.greedyOpening = other.greedyOpening;
+        this.fixedDist = other.fixedDist;
+        this.restNearestDist = other.restNearestDist;
+
+        this.lagrange = other.lagrange == null ? null : new LagrangeBound(other.lagrange, other.depth);
+        this.localSearch = other.localSearch == null ? null : new LocalSearch(other.localSearch);
+
+        this.depth = other.depth;
+        this.trailCustomer = other.trailCustomer.clone();
+        this.trailFacility = other.trailFacility.clone();
+        this.trailFixedCost = other.trailFixedCost.clone();
+        this.trailGreedyCostTo = other.trailGreedyCostTo.clone();
+        this.trailGreedyCostFrom = other.trailGreedyCostFrom.clone();
+
+        // die Kopie zaehlt nur ihre eigenen Knoten
+        this.knotenProTiefe = new long[other.knotenProTiefe.length];
+    }
+
+    /**
+     * Fixiert Kunde j an Facility i.
+     *
+     * @param j Der Kunde
+     * @param i Die Facility
+     */
+    void apply(int j, int i) {
+
+        //=============== Variablen - START ==//
+
+        int b = this.cflp.bandwidths[j];
+        int g = this.nearest[j];
+
+        int oldFixed = openingCost(i, fixedLoad[i]);
+        int oldGreedyTo = openingCost(i, greedyLoad[i]);
+        int oldGreedyFrom = openingCost(g, greedyLoad[g]);
+
+        //=============== Variablen - END ==//
+
+        trailCustomer[depth] = j;
+        trailFacility[depth] = i;
+        trailFixedCost[depth] = oldFixed;
+        trailGreedyCostTo[depth] = oldGreedyTo;
+        trailGreedyCostFrom[depth] = oldGreedyFrom;
+        depth++;
+
+        assignment[j] = i;
+        fixed[j] = true;
+
+        // Fixierte Belegung
+        fixedLoad[i] += b;
+        fixedCount[i]++;
+        freeBandwidth -= b;
+        fixedOpening += openingCost(i, fixedLoad[i]) - oldFixed;
+        fixedDist += this.cflp.distance(i, j);
+        restNearestDist -= this.cflp.distance(g, j);
+
+        // Greedy-Vervollstaendigung: der Kunde wandert von g nach i
+        if (i != g) {
+            greedyLoad[g] -= b;
+            greedyLoad[i] += b;
+            greedyOpening += openingCost(g, greedyLoad[g]) - oldGreedyFrom;
+            greedyOpening += openingCost(i, greedyLoad[i]) - oldGreedyTo;
+        }
+    }
+
+    /**
+     * Nimmt die zuletzt fixierte Zuordnung zurueck.
+     */
+    void undo() {
+
+        //=============== Variablen - START ==//
+
+        depth--;
+
+        int j = trailCustomer[depth];
+        int i = trailFacility[depth];
+        int b = this.cflp.bandwidths[j];
+        int g = this.nearest[j];
+
+        //=============== Variablen - END ==//
+
+        if (i != g) {
+            greedyOpening -= openingCost(i, greedyLoad[i]) - trailGreedyCostTo[depth];
+            greedyOpening -= openingCost(g, greedyLoad[g]) - trailGreedyCostFrom[depth];
+            greedyLoad[i] -= b;
+            greedyLoad[g] += b;
+        }
+
+        restNearestDist += this.cflp.distance(g, j);
+        fixedDist -= this.cflp.distance(i, j);
+        fixedOpening -= openingCost(i, fixedLoad[i]) - trailFixedCost[depth];
+        fixedLoad[i] -= b;
+        fixedCount[i]--;
+        freeBandwidth += b;
+
+        assignment[j] = g;
+        fixed[j] = false;
+    }
+
+    /**
+     * Untere Schranke: Distanzkosten aller Kunden (nicht fixierte zur naehesten
+     * Facility) plus Errichtungskosten, die durch die fixierten Kunden entstehen.
+     */
+    int lowerBound() {
+        return clamp((fixedDist + restNearestDist) * this.cflp.distanceCosts + fixedOpening);
+    }
+
+    /**
+     * Obere Schranke: Kosten der Greedy-Vervollstaendigung.
+     */
+    int upperBound() {
+        return clamp((fixedDist + restNearestDist) * this.cflp.distanceCosts + greedyOpening);
+    }
+
+    /**
+     * Zaehlt einen Knoten. Liefert jedes interval-te Mal true, damit die Suche nicht
+     * in jedem Knoten die Uhr abfragen muss.
+     *
+     * @param interval Knoten zwischen zwei Zeitpruefungen
+     * @return true, falls die Zeit geprueft werden soll
+     */
+    boolean tick(int interval) {
+        if (--bisZurZeitpruefung > 0) {
+            return false;
+        }
+        bisZurZeitpruefung = interval;
+        return true;
+    }
+
+    /**
+     * Zaehlt einen bewerteten Knoten in der aktuellen Tiefe.
+     *
+     * @param pruned true, falls die untere Schranke den Knoten abschneidet
+     */
+    void countNode(boolean pruned) {
+        knotenProTiefe[depth]++;
+        if (pruned) {
+            abgeschnitten++;
+        }
+    }
+
+    /**
+     * Uebertraegt die Zaehler an die gemeinsame Statistik und setzt sie zurueck.
+     *
+     * @param statistics Die Statistik der Suche
+     * @param upperBound Die aktuell beste Loesung
+     * @param lowerBound Die aktuell bewiesene untere Schranke
+     */
+    void flushStatistics(SearchStatistics statistics, int upperBound, int lowerBound) {
+        statistics.add(knotenProTiefe, abgeschnitten, upperBound, lowerBound);
+        Arrays.fill(knotenProTiefe, 0);
+        abgeschnitten = 0;
+    }
+
+    /**
+     * Aktiviert die Lagrange-Schranke fuer diesen Pfad.
+     */
+    void setLagrange(LagrangeBound lagrange) {
+        this.lagrange = lagrange;
+    }
+
+    /**
+     * @return Die Lagrange-Schranke dieses Pfades oder null
+     */
+    LagrangeBound lagrange() {
+        return lagrange;
+    }
+
+    /**
+     * Aktiviert die lokale Suche fuer neue Loesungen dieses Pfades.
+     */
+    void setLocalSearch(LocalSearch localSearch) {
+        this.localSearch = localSearch;
+    }
+
+    /**
+     * @return Die lokale Suche dieses Pfades oder null
+     */
+    LocalSearch localSearch() {
+        return localSearch;
+    }
+
+    /**
+     * Die Greedy-Vervollstaendigung des aktuellen Knotens. Das Array wird von der
+     * Suche weiterverwendet und darf nicht veraendert werden; setSolution kopiert
+     * es nur bei einer echten Verbesserung.
+     *
+     * @return Belegung Kunde -> Facility
+     */
+    int[] assignment() {
+        return assignment;
+    }
+
+    /**
+     * @return Anzahl der fixierten Kunden
+     */
+    int depth() {
+        return depth;
+    }
+
+    /**
+     * @param d Die Tiefe, 0 &lt;= d &lt; depth()
+     * @return Der Kunde, der in Tiefe d fixiert wurde
+     */
+    int customerAt(int d) {
+        return trailCustomer[d];
+    }
+
+    /**
+     * @param d Die Tiefe, 0 &lt;= d &lt; depth()
+     * @return Die Facility, an die der Kunde in Tiefe d fixiert wurde
+     */
+    int facilityAt(int d) {
+        return trailFacility[d];
+    }
+
+    /**
+     * @param j Der Kunde
+     * @return true, falls der Kunde fixiert ist
+     */
+    boolean isFixed(int j) {
+        return fixed[j];
+    }
+
+    /**
+     * @param i Die Facility
+     * @return Die Bandbreite der an Facility i fixierten Kunden
+     */
+    int fixedLoad(int i) {
+        return fixedLoad[i];
+    }
+
+    /**
+     * @param i Die Facility
+     * @return Die Anzahl der an Facility i fixierten Kunden
+     */
+    int fixedCount(int i) {
+        return fixedCount[i];
+    }
+
+    /**
+     * @return Die Bandbreite aller nicht fixierten Kunden
+     */
+    long freeBandwidth() {
+        return freeBandwidth;
+    }
+
+    /**
+     * @return Die Summe der Distanzen der fixierten Kunden (ohne Distanzkosten-Faktor)
+     */
+    long fixedDistance() {
+        return fixedDist;
+    }
+
+    private int openingCost(int i, int load) {
+        return this.cflp.openingCost(i, load);
+    }
+
+    private static int clamp(long kosten) {
+        return kosten > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) kosten;
+    }
+}
@@ -0,0 +1,120 @@
+package ad2.ss17.cflp;
+
+/**
+ * Das Ergebnis einer Suche als Start fuer die naechste Suche auf einer leicht
+ * geaenderten Instanz.
+ * <p>
+ * Enthaelt die beste Loesung, die Lagrange-Multiplikatoren der Wurzel und den
+ * sortierten Distanz-Index. Mit {@link #apply(InstanceDelta)} wird die Instanz
+ * geaendert, der Index wird dabei nur fuer Kunden mit geaenderten Distanzen neu
+ * sortiert. Die naechste Suche
+ * ({@link CFLP#CFLP(CFLPInstance, java.util.concurrent.ForkJoinPool, CFLPOptions, CFLPWarmStart)})
+ * </p>
+ * <ul>
+ * <li>uebernimmt den Index, falls sie auf derselben Instanz laeuft,</li>
+ * <li>repariert die Loesung (ungueltige Facilities werden durch die naeheste ersetzt),
+ * verbessert sie mit der lokalen Suche und startet mit ihr als bester Loesung,</li>
+ * <li>startet die Lagrange-Schranke der Wurzel mit den alten Multiplikatoren und</li>
+ * <li>fixiert die geaenderten Kunden zuerst, der Rest des Baums wird dann vor allem
+ * von der alten Loesung abgeschnitten.</li>
+ * </ul>
+ * Die Suche, die den Warmstart erzeugt hat, muss beendet sein, bevor die Instanz
+ * geaendert wird.
+ */
+public final class CFLPWarmStart {
+
+    private final CFLPInstance instance;
+    private final FacilityRankIndex index;
+    private final int[] solution;
+    private final double[] multipliers;
+
+    // Kunden, deren Daten sich seit der Suche geaendert haben oder deren Facility teurer/billiger wurde
+    private final boolean[] geaendert;
+
+
+    /**
+     * @param instance    Die Instanz der Suche
+     * @param index       Der vollstaendige Index der Instanz
+     * @param solution    Die beste Loesung
+     * @param multipliers Die Multiplikatoren der Wurzel oder null
+     */
+    CFLPWarmStart(CFLPInstance instance, FacilityRankIndex index, int[] solution, double[] multipliers) {
+        this.instance = instance;
+        this.index = index;
+        this.solution = solution;
+        this.multipliers = multipliers;
+        this.geaendert = new boolean[instance.getNumCustomers()];
+    }
+
+    /**
+     * Aendert die Instanz und haelt den Index aktuell.
+     *
+     * @param delta Die Aenderungen
+     */
+    public void apply(InstanceDelta delta) {
+
+        //=============== Variablen - START ==//
+
+        boolean[] neuSortieren = new boolean[instance.getNumCustomers()];
+
+        //=============== Variablen - END ==//
+
+        delta.applyTo(instance);
+
+        for (int[] a : delta.changes()) {
+            if (a[0] == InstanceDelta.ERRICHTUNG) {
+                for (int j = 0; j < solution.length; j++) {
+                    geaendert[j] |= solution[j] == a[1];
+                }
+            } else {
+                geaendert[a[2]] = true;
+                neuSortieren[a[2]] |= a[0] == InstanceDelta.DISTANZ;
+            }
+        }
+
+        for (int j = 0; j < neuSortieren.length; j++) {
+            if (neuSortieren[j]) {
+                index.update(instance, j);
+            }
+        }
+    }
+
+    /**
+     * @return Die Instanz, auf die sich der Warmstart bezieht
+     */
+    public CFLPInstance instance() {
+        return instance;
+    }
+
+    /**
+     * @return Kopie der Loesung der letzten Suche
+     */
+    public int[] solution() {
+        return solution.clone();
+    }
+
+    /**
+     * @return Anzahl der Kunden, die von Aenderungen betroffen sind
+     */
+    public int changedCustomers() {
+        int anzahl = 0;
+        for (boolean g : geaendert) {
+            if (g) {
+                anzahl++;
+            }
+        }
+        return anzahl;
+    }
+
+    FacilityRankIndex index() {
+        return index;
+    }
+
+    double[] multipliers() {
+        return multipliers;
+    }
+
+    boolean[] changed() {
+        return geaendert;
+    }
+}
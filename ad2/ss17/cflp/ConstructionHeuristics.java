@@ -0,0 +1,406 @@
+package ad2.ss17.cflp;
+
+import java.util.Arrays;
+
+/**
+ * Eroeffnungsheuristiken fuer die erste obere Schranke.
+ * <p>
+ * Die naeheste Facility pro Kunde ignoriert die Errichtungskosten und die Ausbaustufen,
+ * ihre Kosten liegen daher oft weit ueber dem Optimum. Die drei Heuristiken beachten beides:
+ * </p>
+ * <ul>
+ * <li>ADD: beginnt mit der billigsten einzelnen Facility und eroeffnet solange die Facility
+ * mit der groessten Ersparnis. Ein Kunde wechselt zur neuen Facility, falls sie naeher ist
+ * und Distanz und Entlastung seiner bisherigen Facility mehr sparen, als die neue
+ * Ausbaustufe kostet.</li>
+ * <li>DROP: beginnt mit allen Facilities offen (naeheste Facility) und schliesst solange die
+ * Facility mit der groessten Ersparnis, ihre Kunden gehen zur naechsten offenen Facility.</li>
+ * <li>MARGINAL: Kunden mit grosser Bandbreite zuerst, jeder geht zur Facility mit den
+ * kleinsten Grenzkosten aus Distanz und Errichtungskosten der neuen Ausbaustufe.</li>
+ * </ul>
+ * <p>
+ * Alle Kosten werden als double ueber {@link CFLPInstance#openingCost(int, int)} bewertet,
+ * Ausbaustufen mit int Ueberlauf werden geschaetzt.
+ * Die Methoden haben nur lokale Puffer und koennen gleichzeitig von mehreren Threads
+ * aufgerufen werden. Nach der Deadline geben ADD und DROP die bisherige Loesung zurueck,
+ * MARGINAL ordnet die restlichen Kunden der naehesten Facility zu.
+ * </p>
+ */
+final class ConstructionHeuristics {
+
+    // Die Uhr wird bei MARGINAL nur alle so viele Kunden abgefragt
+    private static final int UHR_INTERVALL = 1024;
+
+    // Wachstum der Errichtungskosten pro Ausbaustufe nach dem Ueberlauf
+    private static final double PHI = (1 + Math.sqrt(5)) / 2;
+
+    // Ab dieser Stufe waechst die Schaetzung nur noch linear, phi^1000 ist noch weit unter
+    // Double.MAX_VALUE
+    private static final int MAX_STUFE = 1000;
+
+    private final CFLPInstance cflp;
+    private final FacilityRankIndex index;
+    private final int n;
+    private final int m;
+    private final long e;
+
+    private final long deadline;
+    private final boolean mitDeadline;
+
+
+    /**
+     * @param cflp          Die Probleminstanz
+     * @param index         Der vollstaendige Index der Instanz
+     * @param deadlineNanos Ende als Wert von {@link System#nanoTime()}
+     * @param mitDeadline   false = ohne Zeitgrenze
+     */
+    ConstructionHeuristics(CFLPInstance cflp, FacilityRankIndex index, long deadlineNanos, boolean mitDeadline) {
+        this.cflp = cflp;
+        this.index = index;
+        this.n = cflp.getNumFacilities();
+        this.m = cflp.getNumCustomers();
+        this.e = cflp.distanceCosts;
+        this.deadline = deadlineNanos;
+        this.mitDeadline = mitDeadline;
+    }
+
+    /**
+     * @return Die Loesung von ADD
+     */
+    int[] add() {
+
+        //=============== Variablen - START ==//
+
+        int[] loesung = new int[m];
+        int[] load = new int[n];
+        boolean[] offen = new boolean[n];
+        int[] abgabe = new int[n];
+        int[] beruehrt = new int[n];
+        int[] distanz = new int[m];         // Distanz von Kunde j zu loesung[j]
+
+        long gesamt = 0;
+        int erste = 0;
+        double ersteKosten = Double.POSITIVE_INFINITY;
+
+        //=============== Variablen - END ==//
+
+        for (int j = 0; j < m; j++) {
+            gesamt += this.cflp.bandwidths[j];
+        }
+
+        // Idee:
+        //
+        // Die billigste Facility, wenn sie alle Kunden allein versorgt
+        for (int i = 0; i < n; i++) {
+            double kosten = opening(i, (int) Math.min(gesamt, Integer.MAX_VALUE));
+            for (int j = 0; j < m; j++) {
+                kosten += e * this.cflp.distance(i, j);
+            }
+            if (kosten < ersteKosten) {
+                ersteKosten = kosten;
+                erste = i;
+            }
+        }
+        Arrays.fill(loesung, erste);
+        for (int j = 0; j < m; j++) {
+            distanz[j] = this.cflp.distance(erste, j);
+        }
+        load[erste] = (int) Math.min(gesamt, Integer.MAX_VALUE);
+        offen[erste] = true;
+
+        // Die Facility mit der groessten Ersparnis eroeffnen, bis keine mehr spart
+        while (!abgelaufen()) {
+
+            int besteFacility = -1;
+            double besteErsparnis = 0;
+
+            for (int f = 0; f < n; f++) {
+                if (offen[f]) {
+                    continue;
+                }
+                // Ein Schritt kostet O(n * m), die Uhr daher pro Kandidat
+                if (abgelaufen()) {
+                    return loesung;
+                }
+                double delta = eroeffne(f, loesung, distanz, load, abgabe, beruehrt, false);
+                if (delta < besteErsparnis) {
+                    besteErsparnis = delta;
+                    besteFacility = f;
+                }
+            }
+
+            if (besteFacility < 0) {
+                break;
+            }
+
+            offen[besteFacility] = true;
+            eroeffne(besteFacility, loesung, distanz, load, abgabe, beruehrt, true);
+        }
+
+        return loesung;
+    }
+
+    /**
+     * Bewertet fuer ADD das Eroeffnen von f. Die Kunden werden der Reihe nach betrachtet,
+     * ein Kunde wechselt, falls f naeher ist und die Ersparnis bei Distanz und bisheriger
+     * Facility groesser ist als die Grenzkosten bei f. Die Grenzkosten kommen aus den
+     * zwischen den Ausbaustufen linear interpolierten Kosten ({@link #glatt(int, int)}),
+     * sonst entlastet ein einzelner Kunde fast nie eine Facility. Bewertet wird mit den
+     * echten Kosten, dafuer werden nur die abgebenden Facilities besucht.
+     *
+     * @param f          Die Facility
+     * @param loesung    Die Zuordnung, wird mit ausfuehren geaendert
+     * @param distanz    Distanz von Kunde j zu loesung[j], wird mit ausfuehren geaendert
+     * @param load       Bandbreite pro Facility, wird mit ausfuehren geaendert
+     * @param abgabe     Puffer, ueberall 0, danach wieder 0
+     * @param beruehrt   Puffer fuer die abgebenden Facilities
+     * @param ausfuehren true = die Kunden wechseln wirklich
+     * @return Die Aenderung der Kosten, negativ = Ersparnis
+     */
+    private double eroeffne(int f, int[] loesung, int[] distanz, int[] load, int[] abgabe, int[] beruehrt,
+                            boolean ausfuehren) {
+
+        //=============== Variablen - START ==//
+
+        double delta = 0;
+        int zuF = 0;
+        int anzahl = 0;
+
+        //=============== Variablen - END ==//
+
+        for (int j = 0; j < m; j++) {
+            int d = this.cflp.distance(f, j);
+            if (d >= distanz[j]) {
+                continue;
+            }
+            int g = loesung[j];
+            int b = this.cflp.bandwidths[j];
+            int rest = load[g] - abgabe[g];
+            double gewinn = e * (distanz[j] - d) + glatt(g, rest) - glatt(g, rest - b);
+            double preis = glatt(f, zuF + b) - glatt(f, zuF);
+            if (gewinn <= preis) {
+                continue;
+            }
+
+            delta += e * (d - distanz[j]);
+            zuF += b;
+            // Kunden ohne Bandbreite aendern die Last von g nicht
+            if (abgabe[g] == 0 && b > 0) {
+                beruehrt[anzahl++] = g;
+            }
+            abgabe[g] += b;
+            if (ausfuehren) {
+                loesung[j] = f;
+                distanz[j] = d;
+            }
+        }
+
+        if (zuF > 0) {
+            delta += opening(f, zuF);
+        }
+        for (int k = 0; k < anzahl; k++) {
+            int g = beruehrt[k];
+            delta += opening(g, load[g] - abgabe[g]) - opening(g, load[g]);
+            if (ausfuehren) {
+                load[g] -= abgabe[g];
+            }
+            abgabe[g] = 0;
+        }
+        if (ausfuehren) {
+            load[f] += zuF;
+        }
+        return delta;
+    }
+
+    /**
+     * @return Die Loesung von DROP
+     */
+    int[] drop() {
+
+        //=============== Variablen - START ==//
+
+        int[] loesung = new int[m];
+        int[] rang = new int[m];            // Rang von loesung[j] im Index
+        int[] naechster = new int[m];       // Rang der naechsten offenen Facility nach loesung[j], -1 = keine
+        int[] load = new int[n];
+        boolean[] offen = new boolean[n];
+
+        int[] start = new int[n + 1];       // Kunden pro Facility: kunden[start[i] .. start[i+1]-1]
+        int[] kunden = new int[m];
+        int[] zu = new int[n];
+        int[] beruehrt = new int[n];
+
+        //=============== Variablen - END ==//
+
+        Arrays.fill(offen, true);
+        for (int j = 0; j < m; j++) {
+            loesung[j] = this.index.nearest(j);
+            load[loesung[j]] += this.cflp.bandwidths[j];
+        }
+
+        while (!abgelaufen()) {
+
+            // Kunden nach Facility sortieren und fuer jeden die naechste offene Facility suchen
+            Arrays.fill(start, 0);
+            for (int j = 0; j < m; j++) {
+                start[loesung[j] + 1]++;
+                int r = rang[j] + 1;
+                while (r < this.index.size(j) && !offen[this.index.facility(j, r)]) {
+                    r++;
+                }
+                naechster[j] = r < this.index.size(j) ? r : -1;
+            }
+            for (int i = 0; i < n; i++) {
+                start[i + 1] += start[i];
+            }
+            int[] pos = Arrays.copyOf(start, n);
+            for (int j = 0; j < m; j++) {
+                kunden[pos[loesung[j]]++] = j;
+            }
+
+            int besteFacility = -1;
+            double besteErsparnis = 0;
+
+            for (int f = 0; f < n; f++) {
+                if (start[f] == start[f + 1]) {
+                    continue;
+                }
+
+                double delta = -opening(f, load[f]);
+                int anzahl = 0;
+                boolean moeglich = true;
+
+                for (int p = start[f]; p < start[f + 1]; p++) {
+                    int j = kunden[p];
+                    if (naechster[j] < 0) {
+                        moeglich = false;
+                        break;
+                    }
+                    int g = this.index.facility(j, naechster[j]);
+                    int b = this.cflp.bandwidths[j];
+                    delta += e * ((long) this.index.distance(j, naechster[j]) - this.index.distance(j, rang[j]));
+                    // Kunden ohne Bandbreite aendern die Last von g nicht
+                    if (zu[g] == 0 && b > 0) {
+                        beruehrt[anzahl++] = g;
+                    }
+                    zu[g] += b;
+                }
+
+                for (int k = 0; k < anzahl; k++) {
+                    int g = beruehrt[k];
+                    delta += opening(g, load[g] + zu[g]) - opening(g, load[g]);
+                    zu[g] = 0;
+                }
+
+                if (moeglich && delta < besteErsparnis) {
+                    besteErsparnis = delta;
+                    besteFacility = f;
+                }
+            }
+
+            if (besteFacility < 0) {
+                break;
+            }
+
+            offen[besteFacility] = false;
+            load[besteFacility] = 0;
+            for (int p = start[besteFacility]; p < start[besteFacility + 1]; p++) {
+                int j = kunden[p];
+                rang[j] = naechster[j];
+                loesung[j] = this.index.facility(j, rang[j]);
+                load[loesung[j]] += this.cflp.bandwidths[j];
+            }
+        }
+
+        return loesung;
+    }
+
+    /**
+     * @return Die Loesung von MARGINAL
+     */
+    int[] marginal() {
+
+        //=============== Variablen - START ==//
+
+        int[] loesung = new int[m];
+        int[] load = new int[n];
+        long[] keys = new long[m];
+        boolean abgelaufen = false;
+
+        //=============== Variablen - END ==//
+
+        // Wie in CustomerOrder: Schluessel und Kundennummer in einem long, grosse Bandbreite zuerst
+        for (int j = 0; j < m; j++) {
+            keys[j] = ((long) -this.cflp.bandwidths[j] << 32) | j;
+        }
+        Arrays.sort(keys);
+
+        for (int q = 0; q < m; q++) {
+            int j = (int) keys[q];
+            int b = this.cflp.bandwidths[j];
+
+            if (q % UHR_INTERVALL == 0) {
+                abgelaufen = abgelaufen();
+            }
+
+            int beste = this.index.nearest(j);
+            if (!abgelaufen) {
+                double besteKosten = Double.POSITIVE_INFINITY;
+                for (int r = 0; r < this.index.size(j); r++) {
+                    int i = this.index.facility(j, r);
+                    double kosten = e * this.index.distance(j, r) + opening(i, load[i] + b) - opening(i, load[i]);
+                    if (kosten < besteKosten) {
+                        besteKosten = kosten;
+                        beste = i;
+                    }
+                }
+            }
+
+            loesung[j] = beste;
+            load[beste] += b;
+        }
+
+        return loesung;
+    }
+
+    //=============== Hilfsmethoden ==//
+
+    /**
+     * Errichtungskosten, bei int Ueberlauf geschaetzt. Die Folge waechst wie Fibonacci,
+     * also etwa mit phi hoch Ausbaustufe. Mit einem festen Wert fuer den Ueberlauf waeren
+     * zwei ueberlastete Facilities gleich teuer wie eine und ADD koennte eine
+     * ueberlastete Facility nie entlasten. Aus demselben Grund steigt die Schaetzung
+     * oberhalb von MAX_STUFE weiter, linear.
+     */
+    private double opening(int i, int l) {
+        int kosten = this.cflp.openingCost(i, l);
+        if (kosten != CFLPInstance.COST_OVERFLOW) {
+            return kosten;
+        }
+        int stufe = this.cflp.tierOf(i, l);
+        double schaetzung = this.cflp.openingCosts[i] * Math.pow(PHI, Math.min(stufe, MAX_STUFE));
+        if (stufe > MAX_STUFE) {
+            schaetzung *= 1 + stufe - MAX_STUFE;
+        }
+        return Math.max(kosten, schaetzung);
+    }
+
+    /**
+     * Errichtungskosten, zwischen den Ausbaustufen linear interpoliert: von den Kosten
+     * der vorigen Stufe bei deren voller Bandbreite bis zu den Kosten der Stufe.
+     */
+    private double glatt(int i, int l) {
+        if (l <= 0) {
+            return 0;
+        }
+        int cap = this.cflp.maxBandwidths[i];
+        int stufe = this.cflp.tierOf(i, l);
+        int unten = (stufe - 1) * cap;
+        double vorher = opening(i, unten);
+        return vorher + (opening(i, l) - vorher) * (l - unten) / cap;
+    }
+
+    private boolean abgelaufen() {
+        return this.mitDeadline && System.nanoTime() - this.deadline >= 0;
+    }
+}
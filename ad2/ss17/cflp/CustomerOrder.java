@@ -0,0 +1,202 @@
+package ad2.ss17.cflp;
+
+import java.util.Arrays;
+
+/**
+ * Die Reihenfolge, in der die Suche die Kunden fixiert.
+ * <p>
+ * Die statischen Strategien berechnen die Reihenfolge einmal im Konstruktor aus
+ * den Bandbreiten und dem sortierten Distanz-Index. Die dynamische Strategie
+ * waehlt in jedem Knoten den freien Kunden mit dem groessten Regret bezogen auf
+ * die bereits fixierten Bandbreiten. Die Klasse hat keinen veraenderlichen
+ * Zustand und kann von allen Workern gemeinsam verwendet werden.
+ * </p>
+ */
+final class CustomerOrder {
+
+    private final CFLPInstance cflp;
+    private final CFLPOptions.Order strategy;
+
+    // Statische Reihenfolge: Kunde fuer jede Tiefe
+    private final int[] order;
+
+
+    /**
+     * @param cflp     Die Probleminstanz
+     * @param index    Die nach Distanz sortierten Facilities pro Kunde
+     * @param strategy Die Strategie
+     */
+    CustomerOrder(CFLPInstance cflp, FacilityRankIndex index, CFLPOptions.Order strategy) {
+        this(cflp, index, strategy, null);
+    }
+
+    /**
+     * Wie oben, aber die Kunden mit zuerst[j] == true kommen in der statischen
+     * Reihenfolge vor allen anderen, untereinander nach der Strategie. Fuer den
+     * Warmstart: die geaenderten Kunden werden zuerst fixiert.
+     *
+     * @param cflp     Die Probleminstanz
+     * @param index    Die nach Distanz sortierten Facilities pro Kunde
+     * @param strategy Die Strategie
+     * @param zuerst   Kunden, die zuerst fixiert werden, oder null
+     */
+    CustomerOrder(CFLPInstance cflp, FacilityRankIndex index, CFLPOptions.Order strategy, boolean[] zuerst) {
+
+        //=============== Variablen - START ==//
+
+        int m = cflp.getNumCustomers();
+        long[] keys = new long[m];
+
+        //=============== Variablen - END ==//
+
+        this.cflp = cflp;
+        this.strategy = strategy;
+        this.order = new int[m];
+
+        // Idee:
+        //
+        // Fuer jeden Kunden wird ein Schluessel berechnet, absteigend sortiert wird
+        // ueber das negierte Kriterium. Wie im FacilityRankIndex wird der Schluessel mit der
+        // Kundennummer (untere 32 Bit) in ein long gepackt, bei Gleichstand bleibt
+        // die Dateireihenfolge.
+        for (int j = 0; j < m; j++) {
+            long key;
+            switch (strategy) {
+                case BANDWIDTH:
+                    key = -(long) cflp.bandwidths[j];
+                    break;
+                case REGRET:
+                    key = -regret(index, j);
+                    break;
+                case CONSTRAINED:
+                    // wenige Alternativen zuerst, dann grosse Bandbreite
+                    key = ((long) alternatives(index, j) << 20) - Math.min(cflp.bandwidths[j], (1 << 20) - 1);
+                    break;
+                default:
+                    key = 0;
+            }
+            keys[j] = (clamp(key) << 32) | j;
+        }
+
+        Arrays.sort(keys);
+        int d = 0;
+        if (zuerst != null) {
+            for (long key : keys) {
+                if (zuerst[(int) key]) {
+                    order[d++] = (int) key;
+                }
+            }
+        }
+        for (long key : keys) {
+            if (zuerst == null || !zuerst[(int) key]) {
+                order[d++] = (int) key;
+            }
+        }
+    }
+
+    /**
+     * Liefert den Kunden, der in der Tiefe depth fixiert wird.
+     *
+     * @param depth Anzahl der bereits fixierten Kunden
+     * @param state Der Suchzustand
+     * @return Der naechste Kunde
+     */
+    int next(int depth, CFLPSearchState state) {
+        if (strategy != CFLPOptions.Order.DYNAMIC) {
+            return order[depth];
+        }
+        return maxRegret(state);
+    }
+
+    /**
+     * Begrenzt einen Schluessel auf 32 Bit, damit er zusammen mit der vollen Kundennummer
+     * in ein long passt. Sehr grosse Regrets bzw. mehr als 2047 Alternativen werden gleich
+     * eingeordnet, die Reihenfolge ist nur eine Heuristik.
+     */
+    private static long clamp(long key) {
+        return Math.max(Integer.MIN_VALUE, Math.min(key, Integer.MAX_VALUE));
+    }
+
+    /**
+     * Statischer Regret: Distanzkosten zur zweitnaehesten minus zur naehesten Facility.
+     */
+    private long regret(FacilityRankIndex index, int j) {
+        if (index.size(j) < 2) {
+            return 0;
+        }
+        return (long) this.cflp.distanceCosts * (index.distance(j, 1) - index.distance(j, 0));
+    }
+
+    /**
+     * Anzahl der Facilities, bei denen die zusaetzlichen Distanzkosten gegenueber der
+     * naehesten Facility kleiner sind, als diese Facility nur fuer den Kunden zu errichten.
+     */
+    private int alternatives(FacilityRankIndex index, int j) {
+
+        //=============== Variablen - START ==//
+
+        int e = this.cflp.distanceCosts;
+        int b = this.cflp.bandwidths[j];
+        int nearestDist = index.distance(j, 0);
+
+        int count = 0;
+
+        //=============== Variablen - END ==//
+
+        for (int r = 1; r < index.size(j); r++) {
+            long mehrkosten = (long) e * (index.distance(j, r) - nearestDist);
+            if (mehrkosten < this.cflp.openingCost(index.facility(j, r), b)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Dynamischer Regret: fuer jeden freien Kunden die Differenz zwischen der besten und
+     * zweitbesten Facility, jeweils Distanzkosten plus Grenzkosten der Errichtung bei der
+     * aktuell fixierten Bandbreite. O(n * m) pro Aufruf.
+     */
+    private int maxRegret(CFLPSearchState state) {
+
+        //=============== Variablen - START ==//
+
+        int n = this.cflp.getNumFacilities();
+        int m = this.cflp.getNumCustomers();
+        int e = this.cflp.distanceCosts;
+
+        int bestCustomer = -1;
+        long bestRegret = -1;
+
+        //=============== Variablen - END ==//
+
+        for (int j = 0; j < m; j++) {
+            if (state.isFixed(j)) {
+                continue;
+            }
+
+            int b = this.cflp.bandwidths[j];
+            long first = Long.MAX_VALUE;
+            long second = Long.MAX_VALUE;
+
+            for (int i = 0; i < n; i++) {
+                int load = state.fixedLoad(i);
+                long kosten = (long) e * this.cflp.distance(i, j)
+                        + this.cflp.openingCost(i, load + b) - this.cflp.openingCost(i, load);
+                if (kosten < first) {
+                    second = first;
+                    first = kosten;
+                } else if (kosten < second) {
+                    second = kosten;
+                }
+            }
+
+            long regret = second == Long.MAX_VALUE ? 0 : second - first;
+            if (regret > bestRegret) {
+                bestRegret = regret;
+                bestCustomer = j;
+            }
+        }
+        return bestCustomer;
+    }
+}
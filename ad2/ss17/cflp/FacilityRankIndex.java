@@ -0,0 +1,424 @@
+package ad2.ss17.cflp;
+
+import java.util.Arrays;
+
+/**
+ * Fuer jeden Kunden die Facilities aufsteigend nach Distanz sortiert.
+ * <p>
+ * Die Daten liegen kundenweise hintereinander in zwei flachen Arrays: ab Position
+ * {@code start[j]} stehen die Facilities fuer Kunde j nach Rang und deren Distanzen.
+ * Die Suche liest beim Verzweigen eines Kunden damit nur einen zusammenhaengenden
+ * Speicherbereich und es gibt keine Objekte pro Eintrag.
+ * </p>
+ * <p>
+ * Eine Kandidatenliste (<code>--candidates=k</code>) haelt pro Kunde j zunaechst nur
+ * die k naehesten Facilities, ausgewaehlt ohne den vollstaendigen Index. Nach der
+ * Wurzel der Suche kommen alle f mit e * d(f, j) &lt;= T_j dazu. Die Schwellen kommen
+ * aus der Wurzel ({@link LagrangeBound#candidateThresholds(int)}): jede Loesung, die
+ * f fuer j verwendet, kostet mehr als die beste bekannte Loesung. Alle besseren
+ * Loesungen liegen damit vollstaendig im Index, verlaengert werden nur die Listen,
+ * bei denen die Schwelle ueber die letzte Facility hinausreicht. Speicher und
+ * Verzweigung sind O(Eintraege) statt O(n * m). Fuer die Lagrange-Schranke gibt es
+ * dann zusaetzlich pro Facility die Kunden, in deren Liste sie steht.
+ * </p>
+ */
+final class FacilityRankIndex {
+
+    // Anzahl der Facilities
+    private final int n;
+
+    // Beginn der Liste von Kunde j, start[m] = Anzahl aller Eintraege
+    private final int[] start;
+
+    // Facility Nummern, nach Distanz sortiert, kundenweise hintereinander
+    private final int[] facilities;
+
+    // Distanzen passend zu facilities
+    private final int[] distances;
+
+    // Kunden pro Facility, nur mit Kandidatenliste: customerStart[i] bis customerStart[i + 1] - 1
+    private final int[] customerStart;
+    private final int[] customers;
+
+
+    /**
+     * Sortiert die Distanzen aller Kunden zu den Facilities aufsteigend.
+     *
+     * @param cflp Die Probleminstanz
+     */
+    FacilityRankIndex(CFLPInstance cflp) {
+
+        //=============== Variablen - START ==//
+
+        int m = cflp.getNumCustomers();
+
+        long[] keys;
+        int[] row;
+
+        //=============== Variablen - END ==//
+
+        this.n = cflp.getNumFacilities();
+        this.start = new int[m + 1];
+        this.facilities = new int[m * n];
+        this.distances = new int[m * n];
+        this.customerStart = null;
+        this.customers = null;
+
+        // Idee:
+        //
+        // Distanz und Facility Nummer werden in ein long gepackt (Distanz in den
+        // oberen 32 Bit), damit primitiv sortiert werden kann. Bei gleicher Distanz
+        // kommt die kleinere Facility Nummer zuerst.
+        keys = new long[n];
+        row = new int[n];
+
+        for (int j = 0; j < m; j++) {
+
+            cflp.customerDistances(j, row);
+            for (int i = 0; i < n; i++) {
+                keys[i] = ((long) row[i] << 32) | i;
+            }
+
+            Arrays.sort(keys);
+
+            int offset = j * n;
+            start[j] = offset;
+            for (int r = 0; r < n; r++) {
+                facilities[offset + r] = (int) keys[r];
+                distances[offset + r] = (int) (keys[r] >> 32);
+            }
+        }
+        start[m] = m * n;
+    }
+
+    /**
+     * Sortiert die Liste eines Kunden neu, z.B. nachdem sich Distanzen des Kunden
+     * geaendert haben, O(n log n) statt O(m * n log n) fuer einen neuen Index.
+     * Nur fuer einen vollstaendigen Index.
+     *
+     * @param cflp Die geaenderte Probleminstanz
+     * @param j    Der Kunde
+     */
+    void update(CFLPInstance cflp, int j) {
+        if (isSparse()) {
+            throw new IllegalStateException("Kandidatenliste kann nicht aktualisiert werden");
+        }
+
+        int[] row = new int[n];
+        long[] keys = new long[n];
+        cflp.customerDistances(j, row);
+        for (int i = 0; i < n; i++) {
+            keys[i] = ((long) row[i] << 32) | i;
+        }
+
+        Arrays.sort(keys);
+
+        int offset = start[j];
+        for (int r = 0; r < n; r++) {
+            facilities[offset + r] = (int) keys[r];
+            distances[offset + r] = (int) (keys[r] >> 32);
+        }
+    }
+
+    /**
+     * Kandidatenliste direkt aus der Instanz: pro Kunde j die k naehesten Facilities,
+     * gleich weite Facilities bleiben oder fallen gemeinsam. Speicher O(m * k).
+     *
+     * @param cflp Die Probleminstanz
+     * @param k    Mindestlaenge der Liste
+     */
+    FacilityRankIndex(CFLPInstance cflp, int k) {
+
+        //=============== Variablen - START ==//
+
+        int m = cflp.getNumCustomers();
+        int anzahl = 0;
+
+        long[] keys;
+        int[] row;
+
+        //=============== Variablen - END ==//
+
+        this.n = cflp.getNumFacilities();
+        this.start = new int[m + 1];
+
+        // Idee:
+        //
+        // Pro Kunde reicht eine Teilauswahl (Quickselect) der k kleinsten Schluessel
+        // in O(n), sortiert werden nur diese. Die Listen haben fast immer genau k
+        // Eintraege, die Arrays wachsen nur bei vielen gleich weiten Facilities.
+        keys = new long[n];
+        row = new int[n];
+        int[] facilities = new int[m * Math.min(Math.max(k, 1), n)];
+        int[] distances = new int[facilities.length];
+
+        for (int j = 0; j < m; j++) {
+            cflp.customerDistances(j, row);
+            for (int i = 0; i < n; i++) {
+                keys[i] = ((long) row[i] << 32) | i;
+            }
+            int laenge = naechste(keys, k);
+
+            if (anzahl + laenge > facilities.length) {
+                int groesse = Math.max(anzahl + laenge, facilities.length + facilities.length / 2);
+                facilities = Arrays.copyOf(facilities, groesse);
+                distances = Arrays.copyOf(distances, groesse);
+            }
+            start[j] = anzahl;
+            for (int r = 0; r < laenge; r++) {
+                facilities[anzahl + r] = (int) keys[r];
+                distances[anzahl + r] = (int) (keys[r] >> 32);
+            }
+            anzahl += laenge;
+        }
+        start[m] = anzahl;
+
+        this.facilities = facilities.length == anzahl ? facilities : Arrays.copyOf(facilities, anzahl);
+        this.distances = distances.length == anzahl ? distances : Arrays.copyOf(distances, anzahl);
+        this.customerStart = new int[n + 1];
+        this.customers = new int[anzahl];
+        kundenProFacility();
+    }
+
+    /**
+     * Kandidatenliste mit den Schwellen der Wurzel: pro Kunde j mindestens die k
+     * naehesten Facilities und alle mit Distanzkosten bis schwelle[j]. Reicht die
+     * Liste von basis dafuer nicht, wird sie aus der Instanz verlaengert, alle anderen
+     * Listen sind Praefixe der Listen von basis.
+     *
+     * @param cflp     Die Probleminstanz
+     * @param basis    Vollstaendiger Index oder Kandidatenliste
+     * @param k        Mindestlaenge der Liste
+     * @param schwelle Distanzkosten pro Kunde, bis zu denen Facilities bleiben
+     */
+    FacilityRankIndex(CFLPInstance cflp, FacilityRankIndex basis, int k, long[] schwelle) {
+
+        //=============== Variablen - START ==//
+
+        int m = basis.start.length - 1;
+        int e = cflp.distanceCosts;
+        int anzahl = 0;
+
+        // Verlaengerte Listen als Schluessel, null fuer Praefixe von basis
+        long[][] neu = new long[m][];
+        long[] keys = null;
+        int[] row = null;
+
+        //=============== Variablen - END ==//
+
+        this.n = basis.n;
+        this.start = new int[m + 1];
+
+        // Zuerst nur die Laengen, verlaengert wird nur, wo die Schwelle ueber die
+        // letzte Facility der Liste hinausreicht
+        for (int j = 0; j < m; j++) {
+            int voll = basis.size(j);
+            int laenge;
+            if (voll < n && (long) e * basis.distance(j, voll - 1) <= schwelle[j]) {
+                if (keys == null) {
+                    keys = new long[n];
+                    row = new int[n];
+                }
+                cflp.customerDistances(j, row);
+                int unter = 0;
+                for (int i = 0; i < n; i++) {
+                    if ((long) e * row[i] <= schwelle[j]) {
+                        keys[unter++] = ((long) row[i] << 32) | i;
+                    }
+                }
+                neu[j] = Arrays.copyOf(keys, unter);
+                Arrays.sort(neu[j]);
+                laenge = unter;
+            } else {
+                laenge = Math.min(Math.max(k, 1), voll);
+                while (laenge < voll && (long) e * basis.distance(j, laenge) <= schwelle[j]) {
+                    laenge++;
+                }
+                while (laenge < voll && basis.distance(j, laenge) == basis.distance(j, laenge - 1)) {
+                    laenge++;
+                }
+            }
+            start[j] = anzahl;
+            anzahl += laenge;
+        }
+        start[m] = anzahl;
+
+        this.facilities = new int[anzahl];
+        this.distances = new int[anzahl];
+        for (int j = 0; j < m; j++) {
+            if (neu[j] == null) {
+                System.arraycopy(basis.facilities, basis.start[j], facilities, start[j], size(j));
+                System.arraycopy(basis.distances, basis.start[j], distances, start[j], size(j));
+            } else {
+                for (int r = 0; r < neu[j].length; r++) {
+                    facilities[start[j] + r] = (int) neu[j][r];
+                    distances[start[j] + r] = (int) (neu[j][r] >> 32);
+                }
+            }
+        }
+        this.customerStart = new int[n + 1];
+        this.customers = new int[anzahl];
+        kundenProFacility();
+    }
+
+    /**
+     * Bringt die k kleinsten Schluessel aufsteigend sortiert an den Anfang, dazu alle
+     * mit der gleichen Distanz wie der k-te.
+     *
+     * @param keys Distanz (obere 32 Bit) und Facility Nummer, wird umsortiert
+     * @param k    Anzahl der gesuchten Schluessel
+     * @return Anzahl der Schluessel am Anfang
+     */
+    private static int naechste(long[] keys, int k) {
+
+        //=============== Variablen - START ==//
+
+        int laenge = Math.min(Math.max(k, 1), keys.length);
+        int links = 0;
+        int rechts = keys.length - 1;
+
+        //=============== Variablen - END ==//
+
+        // Quickselect: danach stehen die laenge kleinsten Schluessel vorne
+        while (links < rechts) {
+            long pivot = keys[(links + rechts) >>> 1];
+            int a = links;
+            int b = rechts;
+            while (a <= b) {
+                while (keys[a] < pivot) {
+                    a++;
+                }
+                while (keys[b] > pivot) {
+                    b--;
+                }
+                if (a <= b) {
+                    long t = keys[a];
+                    keys[a++] = keys[b];
+                    keys[b--] = t;
+                }
+            }
+            if (laenge - 1 <= b) {
+                rechts = b;
+            } else if (laenge - 1 >= a) {
+                links = a;
+            } else {
+                break;
+            }
+        }
+
+        Arrays.sort(keys, 0, laenge);
+
+        // Gleich weite Facilities hinter der Grenze nachziehen
+        long grenze = keys[laenge - 1] >> 32;
+        for (int p = laenge; p < keys.length; p++) {
+            if (keys[p] >> 32 == grenze) {
+                long t = keys[laenge];
+                keys[laenge++] = keys[p];
+                keys[p] = t;
+            }
+        }
+        Arrays.sort(keys, 0, laenge);
+        return laenge;
+    }
+
+    /**
+     * Fuellt die Kunden pro Facility per Counting Sort, die Kunden stehen aufsteigend.
+     */
+    private void kundenProFacility() {
+
+        //=============== Variablen - START ==//
+
+        int m = start.length - 1;
+        int anzahl = start[m];
+
+        //=============== Variablen - END ==//
+
+        for (int p = 0; p < anzahl; p++) {
+            customerStart[facilities[p] + 1]++;
+        }
+        for (int i = 0; i < n; i++) {
+            customerStart[i + 1] += customerStart[i];
+        }
+        int[] pos = Arrays.copyOf(customerStart, n);
+        for (int j = 0; j < m; j++) {
+            for (int p = start[j]; p < start[j + 1]; p++) {
+                customers[pos[facilities[p]]++] = j;
+            }
+        }
+    }
+
+    /**
+     * @param j Der Kunde
+     * @param r Der Rang, 0 = naeheste Facility
+     * @return Die Facility mit Rang r fuer Kunde j
+     */
+    int facility(int j, int r) {
+        return facilities[start[j] + r];
+    }
+
+    /**
+     * @param j Der Kunde
+     * @param r Der Rang, 0 = naeheste Facility
+     * @return Die Distanz von Kunde j zur Facility mit Rang r
+     */
+    int distance(int j, int r) {
+        return distances[start[j] + r];
+    }
+
+    /**
+     * @param j Der Kunde
+     * @return Die naeheste Facility fuer Kunde j
+     */
+    int nearest(int j) {
+        return facilities[start[j]];
+    }
+
+    /**
+     * @param j Der Kunde
+     * @return Anzahl der Facilities im Index fuer Kunde j
+     */
+    int size(int j) {
+        return start[j + 1] - start[j];
+    }
+
+    /**
+     * @return Anzahl aller Eintraege (Kunde, Facility)
+     */
+    int entries() {
+        return start[start.length - 1];
+    }
+
+    /**
+     * @return true bei einer Kandidatenliste
+     */
+    boolean isSparse() {
+        return customers != null;
+    }
+
+    /**
+     * Die Kunden, in deren Liste Facility i steht, liegen zwischen customersFrom(i)
+     * und customersTo(i) - 1, aufsteigend. Nur bei einer Kandidatenliste.
+     *
+     * @param i Die Facility
+     * @return Die Position des ersten Kunden fuer {@link #customer(int)}
+     */
+    int customersFrom(int i) {
+        return customerStart[i];
+    }
+
+    /**
+     * @param i Die Facility
+     * @return Die Position nach dem letzten Kunden von Facility i
+     */
+    int customersTo(int i) {
+        return customerStart[i + 1];
+    }
+
+    /**
+     * @param p Position zwischen {@link #customersFrom(int)} und {@link #customersTo(int)}
+     * @return Der Kunde an Position p
+     */
+    int customer(int p) {
+        return customers[p];
+    }
+}
@@ -0,0 +1,90 @@
+package ad2.ss17.cflp;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Kleine Aenderungen an einer Instanz: Bandbreiten von Kunden, Errichtungskosten von
+ * Facilities und einzelne Distanzen.
+ * <p>
+ * Die Aenderungen werden gesammelt und mit {@link #applyTo(CFLPInstance)} direkt auf der
+ * Instanz ausgefuehrt. Dabei werden nur die betroffenen Tabellen der Ausbaustufen neu
+ * berechnet. Zusammen mit {@link CFLPWarmStart#apply(InstanceDelta)} werden ausserdem
+ * nur die Listen des Distanz-Index neu sortiert, deren Kunde eine geaenderte Distanz hat.
+ * </p>
+ */
+public final class InstanceDelta {
+
+    static final int BANDBREITE = 0;
+    static final int ERRICHTUNG = 1;
+    static final int DISTANZ = 2;
+
+    // Aenderungen in Reihenfolge: {Art, Facility, Kunde, Wert}, nicht benutzte Indizes sind -1
+    private final List<int[]> aenderungen = new ArrayList<>();
+
+    /**
+     * @param customerIdx Der Index des Kunden
+     * @param bandwidth   Die neue Bandbreite
+     * @return this
+     */
+    public InstanceDelta setBandwidth(int customerIdx, int bandwidth) {
+        aenderungen.add(new int[]{BANDBREITE, -1, customerIdx, bandwidth});
+        return this;
+    }
+
+    /**
+     * @param facilityIdx Der Index der Facility
+     * @param cost        Die neuen Basiskosten
+     * @return this
+     */
+    public InstanceDelta setOpeningCost(int facilityIdx, int cost) {
+        aenderungen.add(new int[]{ERRICHTUNG, facilityIdx, -1, cost});
+        return this;
+    }
+
+    /**
+     * @param facilityIdx Der Index der Facility
+     * @param customerIdx Der Index des Kunden
+     * @param distance    Die neue Distanz
+     * @return this
+     */
+    public InstanceDelta setDistance(int facilityIdx, int customerIdx, int distance) {
+        aenderungen.add(new int[]{DISTANZ, facilityIdx, customerIdx, distance});
+        return this;
+    }
+
+    /**
+     * @return Anzahl der Aenderungen
+     */
+    public int size() {
+        return aenderungen.size();
+    }
+
+    /**
+     * Fuehrt alle Aenderungen auf der Instanz aus.
+     *
+     * @param instance Die Instanz, wird veraendert
+     * @throws IndexOutOfBoundsException Falls eine Aenderung nicht zur Instanz passt
+     */
+    public void applyTo(CFLPInstance instance) {
+        for (int[] a : aenderungen) {
+            switch (a[0]) {
+                case BANDBREITE:
+                    instance.setBandwidth(a[2], a[3]);
+                    break;
+                case ERRICHTUNG:
+                    instance.setOpeningCost(a[1], a[3]);
+                    break;
+                default:
+                    instance.setDistance(a[1], a[2], a[3]);
+            }
+        }
+    }
+
+    /**
+     * @return Die Aenderungen als {Art, Facility, Kunde, Wert}
+     */
+    List<int[]> changes() {
+        return aenderungen;
+    }
+}
@@ -0,0 +1,207 @@
+package ad2.ss17.cflp;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Symmetrien einer Probleminstanz.
+ * <p>
+ * Zwei Facilities sind symmetrisch, wenn maximale Bandbreite, Errichtungskosten und
+ * alle Distanzen gleich sind. In jeder Loesung koennen sie vertauscht werden, die Suche
+ * verwendet eine Facility daher erst, wenn ihr Vorgaenger in der Klasse schon einen
+ * Kunden hat.
+ * </p>
+ * <p>
+ * Zwei Kunden sind austauschbar, wenn Bandbreite und alle Distanzen gleich sind. Die
+ * Suche fixiert sie in der Reihenfolge der Distanz-Raenge: ein Kunde bekommt keine
+ * Facility mit kleinerem Rang als ein bereits fixierter Kunde seiner Klasse.
+ * </p>
+ * Beide Regeln zusammen lassen von jeder Loesung mindestens eine gleich teure Variante
+ * im Suchbaum, die Klasse hat keinen veraenderlichen Zustand.
+ */
+final class InstanceSymmetry {
+
+    private final CFLPInstance cflp;
+
+    // Vorheriger symmetrischer Facility oder -1
+    private final int[] facilityPredecessor;
+
+    // Naechster austauschbarer Kunde im Ring der Klasse, j selbst falls allein
+    private final int[] customerNext;
+
+    private int facilityClasses;
+    private int customerClasses;
+
+
+    /**
+     * Sucht symmetrische Facilities und austauschbare Kunden.
+     *
+     * @param cflp Die Probleminstanz
+     */
+    InstanceSymmetry(CFLPInstance cflp) {
+
+        //=============== Variablen - START ==//
+
+        int n = cflp.getNumFacilities();
+        int m = cflp.getNumCustomers();
+
+        // Hash -> letztes Mitglied der Klasse
+        Map<Long, Integer> letzte = new HashMap<>();
+        // Hash -> erstes Mitglied der Klasse (nur Kunden)
+        Map<Long, Integer> erste = new HashMap<>();
+
+        //=============== Variablen - END ==//
+
+        this.cflp = cflp;
+        this.facilityPredecessor = new int[n];
+        this.customerNext = new int[m];
+
+        // Idee:
+        //
+        // Jede Zeile bekommt einen Hash, bei gleichem Hash wird mit dem letzten Mitglied
+        // der Klasse exakt verglichen. Bei einer Kollision mit einer anderen Zeile bleibt
+        // das Element allein, das ist immer erlaubt.
+        for (int i = 0; i < n; i++) {
+            long hash = facilityHash(cflp, i);
+            Integer p = letzte.get(hash);
+
+            if (p != null && sameFacility(cflp, p, i)) {
+                facilityPredecessor[i] = p;
+            } else {
+                facilityPredecessor[i] = -1;
+                facilityClasses++;
+            }
+            if (p == null || facilityPredecessor[i] >= 0) {
+                letzte.put(hash, i);
+            }
+        }
+
+        letzte.clear();
+        for (int j = 0; j < m; j++) {
+            long hash = customerHash(cflp, j);
+            Integer p = letzte.get(hash);
+
+            if (p != null && sameCustomer(cflp, p, j)) {
+                // in den Ring nach p einhaengen
+                customerNext[j] = erste.get(hash);
+                customerNext[p] = j;
+                letzte.put(hash, j);
+            } else {
+                customerNext[j] = j;
+                customerClasses++;
+                if (p == null) {
+                    letzte.put(hash, j);
+                    erste.put(hash, j);
+                }
+            }
+        }
+    }
+
+    /**
+     * Facility-Symmetrie: i darf nur verwendet werden, wenn der Vorgaenger in der
+     * Klasse schon einen fixierten Kunden hat.
+     *
+     * @param state Der Suchzustand
+     * @param i     Die Facility
+     * @return true, falls der aktuelle Kunde an i fixiert werden darf
+     */
+    boolean facilityAllowed(CFLPSearchState state, int i) {
+        int p = facilityPredecessor[i];
+        return p < 0 || state.fixedCount(p) > 0;
+    }
+
+    /**
+     * Kunden-Symmetrie: der kleinste Rang, den Kunde j bekommen darf. Alle austauschbaren
+     * Kunden haben dieselbe Rangliste, der Rang muss mindestens so gross sein wie der
+     * eines bereits fixierten Kunden der Klasse.
+     *
+     * @param state Der Suchzustand
+     * @param j     Der Kunde, der fixiert wird
+     * @param index Die nach Distanz sortierten Facilities pro Kunde
+     * @return Der erste erlaubte Rang
+     */
+    int firstRank(CFLPSearchState state, int j, FacilityRankIndex index) {
+
+        //=============== Variablen - START ==//
+
+        int[] belegung = state.assignment();
+        long maxKey = -1;
+        int r = 0;
+
+        //=============== Variablen - END ==//
+
+        for (int k = customerNext[j]; k != j; k = customerNext[k]) {
+            if (state.isFixed(k)) {
+                // gleiche Ordnung wie im FacilityRankIndex: Distanz, dann Facility Nummer
+                int i = belegung[k];
+                maxKey = Math.max(maxKey, key(this.cflp.distance(i, k), i));
+            }
+        }
+
+        if (maxKey < 0) {
+            return 0;
+        }
+        while (r < index.size(j) && key(index.distance(j, r), index.facility(j, r)) < maxKey) {
+            r++;
+        }
+        return r;
+    }
+
+    /**
+     * @return Anzahl der Klassen symmetrischer Facilities
+     */
+    int facilityClasses() {
+        return facilityClasses;
+    }
+
+    /**
+     * @return Anzahl der Klassen austauschbarer Kunden
+     */
+    int customerClasses() {
+        return customerClasses;
+    }
+
+    private static long key(int distance, int facility) {
+        return ((long) distance << 32) | facility;
+    }
+
+    private static long facilityHash(CFLPInstance cflp, int i) {
+        long h = 31L * cflp.maxBandwidths[i] + cflp.openingCosts[i];
+        for (int j = 0; j < cflp.getNumCustomers(); j++) {
+            h = 31 * h + cflp.distance(i, j);
+        }
+        return h;
+    }
+
+    private static long customerHash(CFLPInstance cflp, int j) {
+        long h = cflp.bandwidths[j];
+        for (int i = 0; i < cflp.getNumFacilities(); i++) {
+            h = 31 * h + cflp.distance(i, j);
+        }
+        return h;
+    }
+
+    private static boolean sameFacility(CFLPInstance cflp, int a, int b) {
+        if (cflp.maxBandwidths[a] != cflp.maxBandwidths[b] || cflp.openingCosts[a] != cflp.openingCosts[b]) {
+            return false;
+        }
+        for (int j = 0; j < cflp.getNumCustomers(); j++) {
+            if (cflp.distance(a, j) != cflp.distance(b, j)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean sameCustomer(CFLPInstance cflp, int a, int b) {
+        if (cflp.bandwidths[a] != cflp.bandwidths[b]) {
+            return false;
+        }
+        for (int i = 0; i < cflp.getNumFacilities(); i++) {
+            if (cflp.distance(i, a) != cflp.distance(i, b)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
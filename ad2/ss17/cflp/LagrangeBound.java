@@ -0,0 +1,507 @@
+package ad2.ss17.cflp;
+
+/**
+ * Untere Schranke ueber die Lagrange-Relaxation der Zuordnungsbedingungen.
+ * <p>
+ * Fuer jeden nicht fixierten Kunden j wird die Bedingung "j ist genau einer Facility
+ * zugeordnet" mit einem Multiplikator lambda_j in die Zielfunktion gezogen. Das Problem
+ * zerfaellt dann in ein Teilproblem pro Facility: welche freien Kunden (reduzierte
+ * Kosten e * d_ij - lambda_j) kommen zu den fixierten Kunden dazu, bei Errichtungskosten
+ * nach Ausbaustufe. Das Teilproblem wird fuer jede Ausbaustufe als fraktionales
+ * Rucksackproblem geloest, was wieder eine untere Schranke ist.
+ * </p>
+ * <p>
+ * Die Multiplikatoren werden mit dem Subgradientenverfahren verbessert. Jede Tiefe hat
+ * einen eigenen Puffer, ein Knoten startet mit den Multiplikatoren seines Elternknotens.
+ * Mit lambda_j = Distanzkosten zur naehesten Facility ergibt sich genau die einfache
+ * Schranke aus {@link CFLPSearchState#lowerBound()}, die Lagrange-Schranke ist also
+ * nie schlechter.
+ * </p>
+ * <p>
+ * Aus der Wurzel ergeben sich die Schwellen der Kandidatenliste: mit x_ij = 1 erhoeht
+ * sich das Teilproblem von i um mindestens max(0, e * d_ij - lambda_j), die Schranke
+ * also auf mindestens L + e * d_ij - lambda_j. Liegt das ueber der besten Loesung, kommt
+ * die Zuordnung in keiner besseren Loesung vor. Mit Kandidatenliste
+ * ({@link #setCandidates(FacilityRankIndex)}) betrachtet das Teilproblem einer Facility
+ * dann nur noch die Kunden, in deren Liste sie steht.
+ * </p>
+ * <p>
+ * Fuer die Verzweigung ueber Facilities ({@link CFLPOptions.Search#FACILITY}) gibt es
+ * zusaetzlich einen Status pro Facility ({@link #setFacilityStatus(byte[])}): eine
+ * geschlossene Facility bekommt nur Kunden ohne Bandbreite, eine offene muss mindestens
+ * die erste Ausbaustufe bezahlen.
+ * </p>
+ * Jeder Worker der Suche hat seine eigene Instanz.
+ */
+final class LagrangeBound {
+
+    // Status einer Facility bei der Verzweigung ueber Facilities
+    static final byte FREI = 0;
+    static final byte OFFEN = 1;
+    static final byte GESCHLOSSEN = 2;
+
+    // Maximale Anzahl an doubles fuer die Puffer pro Tiefe
+    private static final int MAX_BUFFER_DOUBLES = 1 << 22;
+
+    private final CFLPInstance cflp;
+    private final int n;
+    private final int m;
+
+    private final int rootIterations;
+    private final int nodeIterations;
+
+    // Kunden pro Facility, null = alle Kunden
+    private FacilityRankIndex candidates;
+
+    // Status pro Facility, null = alle frei
+    private byte[] facilityStatus;
+
+    // Wert der Lagrange-Funktion mit den besten Multiplikatoren der Wurzel
+    private double rootValue = Double.NEGATIVE_INFINITY;
+
+    // Multiplikatoren pro Tiefe; tiefere Knoten teilen sich den letzten Puffer
+    private final double[][] lambda;
+
+    // Schrittweitenfaktor, wird halbiert wenn sich die Schranke nicht verbessert
+    private double mu = 2.0;
+
+    // Ende der Suchzeit als System.nanoTime(), nur gueltig mit mitDeadline
+    private long deadline;
+    private boolean mitDeadline;
+
+    //=============== Puffer fuer eine Auswertung ==//
+
+    private final double[] current;     // aktuelle Multiplikatoren
+    private final double[] subgradient; // 1 - Summe x_ij fuer freie Kunden
+    private final double[] ratio;       // reduzierte Kosten pro Bandbreite
+    private final int[] items;          // freie Kunden mit negativen reduzierten Kosten
+    private final int[] nullItems;      // davon die Kunden ohne Bandbreite
+
+
+    /**
+     * @param cflp           Die Probleminstanz
+     * @param nearest        Die naeheste Facility fuer jeden Kunden
+     * @param rootIterations Subgradienten-Iterationen in der Wurzel
+     * @param nodeIterations Subgradienten-Iterationen in den anderen Knoten
+     */
+    LagrangeBound(CFLPInstance cflp, int[] nearest, int rootIterations, int nodeIterations) {
+        this.cflp = cflp;
+        this.n = cflp.getNumFacilities();
+        this.m = cflp.getNumCustomers();
+        this.rootIterations = rootIterations;
+        this.nodeIterations = nodeIterations;
+
+        int buffers = Math.max(2, Math.min(m + 1, MAX_BUFFER_DOUBLES / Math.max(1, m)));
+        this.lambda = new double[buffers][];
+        for (int d = 0; d < buffers; d++) {
+            this.lambda[d] = new double[m];
+        }
+
+        this.current = new double[m];
+        this.subgradient = new double[m];
+        this.ratio = new double[m];
+        this.items = new int[m];
+        this.nullItems = new int[m];
+
+        // Startwerte: Distanzkosten zur naehesten Facility
+        for (int j = 0; j < m; j++) {
+            this.lambda[0][j] = (double) cflp.distanceCosts * cflp.distance(nearest[j], j);
+        }
+    }
+
+    /**
+     * Kopiert die Multiplikatoren bis zur Tiefe depth, z.B. fuer einen abgespaltenen Teilbaum.
+     */
+    LagrangeBound(LagrangeBound other, int depth) {
+        this.cflp = other.cflp;
+        this.n = other.n;
+        this.m = other.m;
+        this.rootIterations = other.rootIterations;
+        this.nodeIterations = other.nodeIterations;
+        this.candidates = other.candidates;
+        this.facilityStatus = other.facilityStatus;
+        this.rootValue = other.rootValue;
+        this.mu = other.mu;
+        this.deadline = other.deadline;
+        this.mitDeadline = other.mitDeadline;
+
+        this.lambda = new double[other.lambda.length][];
+        for (int d = 0; d < lambda.length; d++) {
+            this.lambda[d] = d <= depth ? other.lambda[d].clone() : new double[m];
+        }
+
+        this.current = new double[m];
+        this.subgradient = new double[m];
+        this.ratio = new double[m];
+        this.items = new int[m];
+        this.nullItems = new int[m];
+    }
+
+    /**
+     * Berechnet die Lagrange-Schranke fuer den Knoten des Suchzustands. Bricht ab, sobald
+     * die Schranke upperBound erreicht, da der Knoten dann ohnehin abgeschnitten wird.
+     *
+     * @param state      Der Suchzustand, depth() Kunden sind fixiert
+     * @param upperBound Die Kosten der besten bekannten Loesung
+     * @return Die beste gefundene untere Schranke
+     */
+    int bound(CFLPSearchState state, int upperBound) {
+        return bound(state, upperBound, state.depth());
+    }
+
+    /**
+     * Wie {@link #bound(CFLPSearchState, int)}, aber mit eigener Tiefe fuer die Puffer der
+     * Multiplikatoren, z.B. die Anzahl der entschiedenen Facilities.
+     *
+     * @param state      Der Suchzustand
+     * @param upperBound Die Kosten der besten bekannten Loesung
+     * @param depth      Die Tiefe des Knotens, 0 = Wurzel
+     * @return Die beste gefundene untere Schranke
+     */
+    int bound(CFLPSearchState state, int upperBound, int depth) {
+
+        //=============== Variablen - START ==//
+
+        int buffer = Math.min(depth, lambda.length - 1);
+        int parent = Math.min(Math.max(depth - 1, 0), lambda.length - 1);
+
+        double[] best = lambda[buffer];
+        int iterations = depth == 0 ? rootIterations : nodeIterations;
+
+        double bestBound = Double.NEGATIVE_INFINITY;
+        int ohneVerbesserung = 0;
+
+        //=============== Variablen - END ==//
+
+        if (depth == 0) {
+            mu = 2.0;
+        }
+
+        // Warmstart mit den Multiplikatoren des Elternknotens
+        if (buffer != parent) {
+            System.arraycopy(lambda[parent], 0, best, 0, m);
+        }
+        System.arraycopy(best, 0, current, 0, m);
+
+        for (int it = 0; it <= iterations; it++) {
+
+            double value = evaluate(state, current);
+
+            if (value > bestBound + 1e-9) {
+                bestBound = value;
+                System.arraycopy(current, 0, best, 0, m);
+                ohneVerbesserung = 0;
+            } else if (++ohneVerbesserung >= 5) {
+                mu = Math.max(mu / 2, 1e-3);
+                ohneVerbesserung = 0;
+            }
+
+            if (bestBound >= upperBound - 1e-6 || it == iterations) {
+                break;
+            }
+
+            // Eine Auswertung kostet O(n * m), nach der Deadline gilt die bisher beste Schranke
+            if (this.mitDeadline && System.nanoTime() - this.deadline >= 0) {
+                break;
+            }
+
+            // Subgradientenschritt
+            double norm = 0;
+            for (int j = 0; j < m; j++) {
+                norm += subgradient[j] * subgradient[j];
+            }
+            if (norm < 1e-12) {
+                // Die Loesung der Relaxation ist zulaessig, besser wird die Schranke nicht
+                break;
+            }
+
+            double step = mu * Math.max(upperBound - value, 1.0) / norm;
+            for (int j = 0; j < m; j++) {
+                current[j] += step * subgradient[j];
+            }
+        }
+
+        if (depth == 0) {
+            rootValue = bestBound;
+        }
+
+        // Kosten sind ganzzahlig, daher darf aufgerundet werden
+        if (bestBound >= Integer.MAX_VALUE) {
+            return Integer.MAX_VALUE;
+        }
+        return (int) Math.ceil(bestBound - 1e-6);
+    }
+
+    /**
+     * Schwellen fuer die Kandidatenliste nach {@link #bound(CFLPSearchState, int)} in der
+     * Wurzel: Facility i bleibt fuer Kunde j, falls e * d_ij &lt;= lambda_j + upperBound - L.
+     * Ein kleiner Zuschlag faengt Rundungsfehler der doubles ab.
+     *
+     * @param upperBound Die Kosten der besten bekannten Loesung
+     * @return Distanzkosten pro Kunde, bis zu denen Facilities bleiben muessen
+     */
+    long[] candidateThresholds(int upperBound) {
+        long[] schwelle = new long[m];
+        double spielraum = upperBound - rootValue + 1e-6 * Math.max(1.0, Math.abs(upperBound));
+        for (int j = 0; j < m; j++) {
+            double t = Math.floor(lambda[0][j] + spielraum);
+            schwelle[j] = t >= Long.MAX_VALUE ? Long.MAX_VALUE : (long) t;
+        }
+        return schwelle;
+    }
+
+    /**
+     * Startet die Wurzel mit den Multiplikatoren einer frueheren Suche, z.B. auf
+     * einer leicht geaenderten Instanz. Vor der ersten Schranke aufrufen.
+     *
+     * @param lam Die Multiplikatoren pro Kunde, andere Laengen werden ignoriert
+     */
+    void setMultipliers(double[] lam) {
+        if (lam != null && lam.length == m) {
+            System.arraycopy(lam, 0, lambda[0], 0, m);
+        }
+    }
+
+    /**
+     * @return Kopie der Multiplikatoren der Wurzel
+     */
+    double[] rootMultipliers() {
+        return lambda[0].clone();
+    }
+
+    /**
+     * Beschraenkt die Teilprobleme auf die Zuordnungen einer Kandidatenliste.
+     *
+     * @param index Der Index der Suche, null = alle Zuordnungen
+     */
+    void setCandidates(FacilityRankIndex index) {
+        this.candidates = index != null && index.isSparse() ? index : null;
+    }
+
+    /**
+     * Nach der Deadline bricht das Subgradientenverfahren ab und liefert die bis dahin
+     * beste Schranke, auch in der Wurzel.
+     *
+     * @param deadlineNanos Das Ende als Wert von {@link System#nanoTime()}
+     */
+    void setDeadline(long deadlineNanos) {
+        this.deadline = deadlineNanos;
+        this.mitDeadline = true;
+    }
+
+    /**
+     * Setzt den Status der Facilities ({@link #FREI}, {@link #OFFEN}, {@link #GESCHLOSSEN}).
+     * Offen heisst "bekommt Bandbreite &gt; 0", Kunden ohne Bandbreite duerfen auch an
+     * geschlossene Facilities. Das Array wird nicht kopiert, die Suche aendert es
+     * zwischen den Aufrufen.
+     *
+     * @param status Status pro Facility, null = alle frei
+     */
+    void setFacilityStatus(byte[] status) {
+        this.facilityStatus = status;
+    }
+
+    /**
+     * Wertet die Lagrange-Funktion fuer die Multiplikatoren lam aus und
+     * berechnet dabei den Subgradienten.
+     */
+    private double evaluate(CFLPSearchState state, double[] lam) {
+
+        //=============== Variablen - START ==//
+
+        int e = this.cflp.distanceCosts;
+
+        double value = (double) e * state.fixedDistance();
+
+        //=============== Variablen - END ==//
+
+        for (int j = 0; j < m; j++) {
+            if (state.isFixed(j)) {
+                subgradient[j] = 0;
+            } else {
+                subgradient[j] = 1;
+                value += lam[j];
+            }
+        }
+
+        for (int i = 0; i < n; i++) {
+            value += facilitySubproblem(state, lam, i);
+        }
+        return value;
+    }
+
+    /**
+     * Loest das Teilproblem einer Facility i: die fixierte Bandbreite ist gesetzt, dazu kommen
+     * beliebige freie Kunden mit ihren reduzierten Kosten. Fuer jede Ausbaustufe wird
+     * fraktional mit den Kunden mit den niedrigsten reduzierten Kosten pro Bandbreite gefuellt.
+     * Die Zuordnung der besten Ausbaustufe wird vom Subgradienten abgezogen.
+     *
+     * @return Der Wert des (relaxierten) Teilproblems
+     */
+    private double facilitySubproblem(CFLPSearchState state, double[] lam, int i) {
+
+        //=============== Variablen - START ==//
+
+        int e = this.cflp.distanceCosts;
+        int cap = this.cflp.maxBandwidths[i];
+        int load = state.fixedLoad(i);
+
+        int count = 0;
+        long totalWeight = 0;
+        double totalValue = 0;
+
+        int nullCount = 0;
+        double nullValue = 0;
+
+        byte status = this.facilityStatus == null ? FREI : this.facilityStatus[i];
+
+        //=============== Variablen - END ==//
+
+        // Freie Kunden mit negativen reduzierten Kosten sammeln
+        int von = this.candidates == null ? 0 : this.candidates.customersFrom(i);
+        int bis = this.candidates == null ? m : this.candidates.customersTo(i);
+        for (int q = von; q < bis; q++) {
+            int j = this.candidates == null ? q : this.candidates.customer(q);
+            if (state.isFixed(j)) {
+                continue;
+            }
+            double rc = (double) e * this.cflp.distance(i, j) - lam[j];
+            if (rc < 0) {
+                int b = this.cflp.bandwidths[j];
+                if (b > 0 && status == GESCHLOSSEN) {
+                    continue;
+                }
+                if (b == 0) {
+                    // braucht keine Kapazitaet, ist also in jeder Stufe dabei
+                    nullItems[nullCount++] = j;
+                    nullValue += rc;
+                    continue;
+                }
+                items[count] = j;
+                ratio[count] = rc / b;
+                count++;
+                totalWeight += b;
+                totalValue += rc;
+            }
+        }
+
+        // Ohne zusaetzliche Kunden bleibt die Facility wie fixiert. Eine offene
+        // Facility bekommt Bandbreite, kostet also mindestens die erste Stufe;
+        // Kunden mit positiven reduzierten Kosten machen das nur teurer.
+        // Kunden ohne Bandbreite kommen in jedem Fall dazu.
+        double ohneKunden = this.cflp.openingCost(i, Math.max(load, status == OFFEN ? 1 : 0)) + nullValue;
+        double bestValue = ohneKunden;
+        int bestTier = -1;
+
+        for (int q = 0; q < nullCount; q++) {
+            subgradient[nullItems[q]] -= 1;
+        }
+
+        if (count == 0) {
+            return ohneKunden;
+        }
+
+        sortByRatio(count);
+
+        // Fuer jede Ausbaustufe fraktional auffuellen; die Gegenstaende werden
+        // ueber die Stufen hinweg inkrementell hinzugenommen
+        int p = 0;
+        long usedWeight = 0;
+        double usedValue = 0;
+
+        for (int tier = Math.max(1, this.cflp.tierOf(i, load)); ; tier++) {
+
+            long capacity = (long) tier * cap - load;
+            int tierCosts = this.cflp.openingCost(i, (int) Math.min(Integer.MAX_VALUE, (long) tier * cap));
+            // Die Stufen werden teurer, auch mit allen Kunden wird es nicht mehr besser
+            if (tierCosts == CFLPInstance.COST_OVERFLOW || tierCosts + nullValue + totalValue >= bestValue) {
+                break;
+            }
+
+            while (p < count && usedWeight + this.cflp.bandwidths[items[p]] <= capacity) {
+                int j = items[p];
+                usedWeight += this.cflp.bandwidths[j];
+                usedValue += (double) e * this.cflp.distance(i, j) - lam[j];
+                p++;
+            }
+
+            double value = tierCosts + nullValue + usedValue;
+            if (p < count && capacity > usedWeight) {
+                value += (capacity - usedWeight) * ratio[p];
+            }
+
+            if (value < bestValue) {
+                bestValue = value;
+                bestTier = tier;
+            }
+
+            // Hoehere Stufen kosten mehr und bringen keine weiteren Kunden
+            if (capacity >= totalWeight) {
+                break;
+            }
+        }
+
+        // Zuordnung der besten Stufe fuer den Subgradienten
+        if (bestTier >= 0) {
+            long capacity = (long) bestTier * cap - load;
+            long weight = 0;
+            for (int q = 0; q < count && weight < capacity; q++) {
+                int j = items[q];
+                int b = this.cflp.bandwidths[j];
+                if (weight + b <= capacity) {
+                    subgradient[j] -= 1;
+                    weight += b;
+                } else {
+                    subgradient[j] -= (double) (capacity - weight) / b;
+                    weight = capacity;
+                }
+            }
+        }
+
+        return bestValue;
+    }
+
+    /**
+     * Sortiert die ersten count Eintraege von ratio aufsteigend, items wird mitsortiert.
+     */
+    private void sortByRatio(int count) {
+        quickSort(0, count - 1);
+    }
+
+    private void quickSort(int lo, int hi) {
+        while (hi - lo > 16) {
+            double pivot = ratio[(lo + hi) >>> 1];
+            int l = lo;
+            int h = hi;
+            while (l <= h) {
+                while (ratio[l] < pivot) l++;
+                while (ratio[h] > pivot) h--;
+                if (l <= h) {
+                    swap(l++, h--);
+                }
+            }
+            // kleinere Haelfte rekursiv, groessere iterativ
+            if (h - lo < hi - l) {
+                quickSort(lo, h);
+                lo = l;
+            } else {
+                quickSort(l, hi);
+                hi = h;
+            }
+        }
+        for (int a = lo + 1; a <= hi; a++) {
+            for (int b = a; b > lo && ratio[b - 1] > ratio[b]; b--) {
+                swap(b - 1, b);
+            }
+        }
+    }
+
+    private void swap(int a, int b) {
+        double r = ratio[a];
+        ratio[a] = ratio[b];
+        ratio[b] = r;
+        int t = items[a];
+        items[a] = items[b];
+        items[b] = t;
+    }
+}
@@ -0,0 +1,412 @@
+package ad2.ss17.cflp;
+
+import java.util.Arrays;
+
+/**
+ * Lokale Suche, die eine neue Loesung verbessert, bevor sie mit setSolution uebernommen wird.
+ * <p>
+ * Die Loesung wird mit vier Nachbarschaften verbessert, bis keine Verbesserung mehr moeglich ist:
+ * </p>
+ * <ul>
+ * <li>Shift: ein Kunde wechselt zu einer anderen Facility</li>
+ * <li>Swap: zwei Kunden verschiedener Facilities tauschen, nur mit Facilities unter den
+ * {@link #SWAP_RAENGE} naehesten des ersten Kunden</li>
+ * <li>Close: alle Kunden einer Facility wechseln einzeln zur jeweils besten anderen</li>
+ * <li>Merge: alle Kunden einer Facility wechseln gemeinsam zu einer anderen</li>
+ * </ul>
+ * <p>
+ * Jeder Zug wird ueber die Aenderung der Distanzkosten und der Errichtungskosten der
+ * beteiligten Facilities bewertet. Mit der Bandbreite pro Facility und den Tabellen der
+ * Ausbaustufen ({@link CFLPInstance#openingCost(int, int)}) kostet das fuer Shift und
+ * Swap O(1), die Loesung wird nie komplett neu bewertet.
+ * </p>
+ * Jeder Worker der Suche hat seine eigene Instanz.
+ */
+final class LocalSearch {
+
+    // Swap nur mit Kunden der naehesten Facilities
+    private static final int SWAP_RAENGE = 8;
+
+    // Obergrenze fuer die Durchlaeufe ueber alle Nachbarschaften
+    private static final int MAX_RUNDEN = 50;
+
+    private final CFLPInstance cflp;
+    private final FacilityRankIndex index;
+    private final int n;
+    private final int m;
+    private final long e;
+
+    //=============== Zustand der aktuellen Loesung ==//
+
+    private final int[] solution;   // Kunde -> Facility
+    private final int[] load;       // Bandbreite pro Facility
+    private final int[] count;      // Kunden pro Facility
+    private long cost;
+
+    //=============== Kunden pro Facility fuer Swap ==//
+
+    private final int[] start;      // members[start[i] .. start[i+1]-1] sind die Kunden von i
+    private final int[] members;
+    private final int[] pos;        // Position des Kunden in members
+
+    // Zwischenspeicher fuer Close und Merge
+    private final int[] moved;
+
+    // Ende der Zeit als System.nanoTime(), nur gueltig mit mitDeadline
+    private long deadline;
+    private boolean mitDeadline;
+
+
+    /**
+     * @param cflp  Die Probleminstanz
+     * @param index Die nach Distanz sortierten Facilities pro Kunde
+     */
+    LocalSearch(CFLPInstance cflp, FacilityRankIndex index) {
+        this.cflp = cflp;
+        this.index = index;
+        this.n = cflp.getNumFacilities();
+        this.m = cflp.getNumCustomers();
+        this.e = cflp.distanceCosts;
+
+        this.solution = new int[m];
+        this.load = new int[n];
+        this.count = new int[n];
+        this.start = new int[n + 1];
+        this.members = new int[m];
+        this.pos = new int[m];
+        this.moved = new int[m];
+    }
+
+    /**
+     * Eigene Puffer fuer einen abgespaltenen Teilbaum.
+     */
+    LocalSearch(LocalSearch other) {
+        this(other.cflp, other.index);
+        this.deadline = other.deadline;
+        this.mitDeadline = other.mitDeadline;
+    }
+
+    /**
+     * Nach der Deadline endet improve() nach der laufenden Nachbarschaft. Die Loesung
+     * ist dann gueltig, nur noch nicht lokal optimal.
+     *
+     * @param deadlineNanos Das Ende als Wert von {@link System#nanoTime()}
+     */
+    void setDeadline(long deadlineNanos) {
+        this.deadline = deadlineNanos;
+        this.mitDeadline = true;
+    }
+
+    /**
+     * Verbessert eine Loesung.
+     *
+     * @param assignment Die Loesung, wird nicht veraendert
+     * @return Die verbesserte Loesung; der Puffer wird beim naechsten Aufruf ueberschrieben
+     */
+    int[] improve(int[] assignment) {
+
+        //=============== Variablen - START ==//
+
+        boolean verbessert = true;
+        int runden = 0;
+
+        //=============== Variablen - END ==//
+
+        System.arraycopy(assignment, 0, solution, 0, m);
+        Arrays.fill(load, 0);
+        Arrays.fill(count, 0);
+
+        cost = 0;
+        for (int j = 0; j < m; j++) {
+            load[solution[j]] += this.cflp.bandwidths[j];
+            count[solution[j]]++;
+            cost += e * this.cflp.distance(solution[j], j);
+        }
+        for (int i = 0; i < n; i++) {
+            cost += opening(i, load[i]);
+        }
+
+        // Bei grossen Instanzen dauert ein Durchlauf lange, die Uhr wird daher
+        // nach jeder Nachbarschaft abgefragt
+        while (verbessert && runden++ < MAX_RUNDEN && !abgelaufen()) {
+            verbessert = shiftPass();
+            if (abgelaufen()) {
+                break;
+            }
+            verbessert |= swapPass();
+            if (abgelaufen()) {
+                break;
+            }
+            verbessert |= closePass();
+            if (abgelaufen()) {
+                break;
+            }
+            verbessert |= mergePass();
+        }
+        return solution;
+    }
+
+    /**
+     * @return Die Kosten der zuletzt verbesserten Loesung, hoechstens Integer.MAX_VALUE
+     */
+    int cost() {
+        return cost > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) cost;
+    }
+
+    //=============== Nachbarschaften ==//
+
+    /**
+     * Jeder Kunde wechselt zur Facility mit der groessten Ersparnis.
+     */
+    private boolean shiftPass() {
+
+        boolean verbessert = false;
+
+        for (int j = 0; j < m; j++) {
+
+            int from = solution[j];
+            int b = this.cflp.bandwidths[j];
+            long wegKosten = shiftOut(j, from, b);
+
+            int bestTo = -1;
+            long bestDelta = 0;
+
+            for (int to = 0; to < n; to++) {
+                if (to == from) {
+                    continue;
+                }
+                long delta = wegKosten + e * this.cflp.distance(to, j) + marginal(to, load[to], b);
+                if (delta < bestDelta) {
+                    bestDelta = delta;
+                    bestTo = to;
+                }
+            }
+
+            if (bestTo >= 0) {
+                move(j, from, bestTo, b);
+                cost += bestDelta;
+                verbessert = true;
+            }
+        }
+        return verbessert;
+    }
+
+    /**
+     * Zwei Kunden an verschiedenen Facilities tauschen die Facility.
+     */
+    private boolean swapPass() {
+
+        boolean verbessert = false;
+
+        buildMembers();
+
+        for (int j1 = 0; j1 < m; j1++) {
+
+            int b1 = this.cflp.bandwidths[j1];
+
+            for (int r = 0; r < Math.min(SWAP_RAENGE, this.index.size(j1)); r++) {
+
+                int i1 = solution[j1];
+                int i2 = this.index.facility(j1, r);
+                if (i2 == i1) {
+                    continue;
+                }
+
+                for (int p = start[i2]; p < start[i2 + 1]; p++) {
+
+                    int j2 = members[p];
+                    int b2 = this.cflp.bandwidths[j2];
+
+                    long delta = e * ((long) this.cflp.distance(i2, j1) + this.cflp.distance(i1, j2)
+                            - this.cflp.distance(i1, j1) - this.cflp.distance(i2, j2))
+                            + opening(i1, load[i1] - b1 + b2) - opening(i1, load[i1])
+                            + opening(i2, load[i2] - b2 + b1) - opening(i2, load[i2]);
+
+                    if (delta < 0) {
+                        solution[j1] = i2;
+                        solution[j2] = i1;
+                        load[i1] += b2 - b1;
+                        load[i2] += b1 - b2;
+
+                        // j1 uebernimmt den Platz von j2 in der Liste von i2 und umgekehrt
+                        members[p] = j1;
+                        members[pos[j1]] = j2;
+                        pos[j2] = pos[j1];
+                        pos[j1] = p;
+
+                        cost += delta;
+                        verbessert = true;
+                        break;
+                    }
+                }
+            }
+        }
+        return verbessert;
+    }
+
+    /**
+     * Eine Facility wird geschlossen, ihre Kunden wechseln nacheinander zur jeweils besten
+     * anderen Facility. Ist das insgesamt keine Verbesserung, wird alles zurueckgenommen.
+     */
+    private boolean closePass() {
+
+        boolean verbessert = false;
+
+        for (int i = 0; i < n; i++) {
+
+            if (count[i] == 0) {
+                continue;
+            }
+
+            int anzahl = 0;
+            long summe = 0;
+
+            for (int j = 0; j < m; j++) {
+
+                if (solution[j] != i) {
+                    continue;
+                }
+
+                int b = this.cflp.bandwidths[j];
+                long wegKosten = shiftOut(j, i, b);
+                int bestTo = -1;
+                long bestDelta = Long.MAX_VALUE;
+
+                for (int to = 0; to < n; to++) {
+                    if (to == i) {
+                        continue;
+                    }
+                    long delta = wegKosten + e * this.cflp.distance(to, j) + marginal(to, load[to], b);
+                    if (delta < bestDelta) {
+                        bestDelta = delta;
+                        bestTo = to;
+                    }
+                }
+
+                if (bestTo < 0) {
+                    break;
+                }
+                move(j, i, bestTo, b);
+                moved[anzahl++] = j;
+                summe += bestDelta;
+            }
+
+            if (summe < 0 && count[i] == 0) {
+                cost += summe;
+                verbessert = true;
+            } else {
+                // zuruecknehmen, in umgekehrter Reihenfolge
+                while (anzahl > 0) {
+                    int j = moved[--anzahl];
+                    move(j, solution[j], i, this.cflp.bandwidths[j]);
+                }
+            }
+        }
+        return verbessert;
+    }
+
+    /**
+     * Alle Kunden einer Facility wechseln gemeinsam zu einer anderen Facility.
+     */
+    private boolean mergePass() {
+
+        boolean verbessert = false;
+
+        for (int i = 0; i < n; i++) {
+
+            if (count[i] == 0) {
+                continue;
+            }
+
+            int bestTo = -1;
+            long bestDelta = 0;
+
+            // Kunden von i einmal sammeln, damit der Pass O(n * m) bleibt
+            int anzahl = 0;
+            for (int j = 0; j < m; j++) {
+                if (solution[j] == i) {
+                    moved[anzahl++] = j;
+                }
+            }
+
+            for (int to = 0; to < n; to++) {
+                if (to == i) {
+                    continue;
+                }
+
+                long distanz = 0;
+                for (int q = 0; q < anzahl; q++) {
+                    int j = moved[q];
+                    distanz += (long) this.cflp.distance(to, j) - this.cflp.distance(i, j);
+                }
+
+                long delta = e * distanz - opening(i, load[i]) + marginal(to, load[to], load[i]);
+                if (delta < bestDelta) {
+                    bestDelta = delta;
+                    bestTo = to;
+                }
+            }
+
+            if (bestTo >= 0) {
+                for (int q = 0; q < anzahl; q++) {
+                    move(moved[q], i, bestTo, this.cflp.bandwidths[moved[q]]);
+                }
+                cost += bestDelta;
+                verbessert = true;
+            }
+        }
+        return verbessert;
+    }
+
+    //=============== Hilfsmethoden ==//
+
+    /**
+     * Kostenaenderung, wenn Kunde j die Facility from verlaesst.
+     */
+    private long shiftOut(int j, int from, int b) {
+        return -e * this.cflp.distance(from, j) + opening(from, load[from] - b) - opening(from, load[from]);
+    }
+
+    private void move(int j, int from, int to, int b) {
+        solution[j] = to;
+        load[from] -= b;
+        load[to] += b;
+        count[from]--;
+        count[to]++;
+    }
+
+    private long opening(int i, int l) {
+        return this.cflp.openingCost(i, l);
+    }
+
+    private long marginal(int i, int l, int b) {
+        return opening(i, l + b) - opening(i, l);
+    }
+
+    private boolean abgelaufen() {
+        return this.mitDeadline && System.nanoTime() - this.deadline >= 0;
+    }
+
+    /**
+     * Sortiert die Kunden nach Facility (Counting Sort) fuer den Swap.
+     */
+    private void buildMembers() {
+        Arrays.fill(start, 0);
+        for (int j = 0; j < m; j++) {
+            start[solution[j] + 1]++;
+        }
+        for (int i = 0; i < n; i++) {
+            start[i + 1] += start[i];
+        }
+        for (int j = 0; j < m; j++) {
+            int p = start[solution[j]]++;
+            members[p] = j;
+            pos[j] = p;
+        }
+        // start wurde beim Einsortieren um eine Facility verschoben
+        for (int i = n; i > 0; i--) {
+            start[i] = start[i - 1];
+        }
+        start[0] = 0;
+    }
+}
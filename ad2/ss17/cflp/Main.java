@@ -9,6 +9,13 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Diese Klasse enth&auml;lt nur die {@link #main main()}-Methode zum Starten
@@ -50,6 +57,55 @@ public class Main {
      */
     private static boolean debug = false;
 
+    /**
+     * So lange wird nach der Deadline noch auf das Ende der Suche gewartet
+     */
+    private static final long GRACE_MILLIS = 1000;
+
+    /**
+     * So lange wird nach {@link CFLP#cancel()} noch auf das Ende der Suche gewartet
+     */
+    private static final long CANCEL_MILLIS = 200;
+
+    /**
+     * Einstellungen der Suche, gesetzt &uuml;ber <code>--name=wert</code>
+     */
+    private static CFLPOptions options = new CFLPOptions();
+
+    /**
+     * Batch flag: alle Dateien und Verzeichnisse nach <code>-b</code> werden
+     * in einer JVM gel&ouml;st
+     */
+    private static boolean batch = false;
+
+    /**
+     * Die Dateien und Verzeichnisse im Batch Modus
+     */
+    private static List<String> batchFiles = new ArrayList<>();
+
+    /**
+     * So viele Instanzen werden im Batch Modus gleichzeitig gel&ouml;st,
+     * gesetzt &uuml;ber <code>--batch-threads=n</code>
+     */
+    private static int batchThreads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Verzeichnis des L&ouml;sungs-Caches, gesetzt &uuml;ber
+     * <code>--cache=verzeichnis</code>; null = ohne Cache
+     */
+    private static String cacheDir = null;
+
+    /**
+     * Maximale Anzahl an Eintr&auml;gen im Cache, gesetzt &uuml;ber
+     * <code>--cache-entries=n</code>
+     */
+    private static int cacheEntries = 1000;
+
+    /**
+     * Der L&ouml;sungs-Cache oder null
+     */
+    private static SolutionCache cache = null;
+
     /**
      * Liest die Daten einer Testinstanz ein und &uuml;bergibt sie an die
      * entsprechenden Methoden der Implementierung.
@@ -73,14 +129,27 @@ public class Main {
      *             {@link #printDebug(String)}, <code>-t</code> gibt
      *             zus&auml;tzlich Dateiname und Laufzeit aus und <code>-s</code>
      *             verhindert, dass Ihr Algorithmus nach 30 Sekunden beendet
-     *             wird. Der erste andere String wird als Dateiname
-     *             interpretiert.
+     *             wird (das Zeitlimit setzt <code>--time-limit=ms</code>). Optionen der Form <code>--name=wert</code> werden an
+     *             {@link CFLPOptions#parseOption(String)} &uuml;bergeben. Der
+     *             erste andere String wird als Dateiname interpretiert. Mit
+     *             <code>-b</code> werden alle folgenden Dateien und
+     *             Verzeichnisse im Batch Modus gel&ouml;st
+     *             ({@link #runBatch(List)}). Mit <code>--cache=verzeichnis</code>
+     *             werden L&ouml;sungen nach dem Fingerprint der Instanzdatei
+     *             gespeichert ({@link SolutionCache}).
      */
     public static void main(String[] args) {
         processArgs(args);
-        if (fileName == null) {
+        if (fileName == null && batchFiles.isEmpty()) {
             bailOut("Keine Inputdatei angegeben!");
         }
+        if (cacheDir != null) {
+            try {
+                cache = new SolutionCache(cacheDir, cacheEntries);
+            } catch (IOException e) {
+                bailOut(e.getMessage());
+            }
+        }
         SecurityManager oldsm = null;
         try {
             oldsm = System.getSecurityManager();
@@ -90,13 +159,29 @@ public class Main {
             bailOut("Error: SecurityManager konnte nicht gesetzt werden: " + e);
         }
 
+        if (batch) {
+            try {
+                boolean ok = runBatch(batchFiles);
+                System.setSecurityManager(oldsm);
+                if (!ok)
+                    System.exit(1);
+            } catch (SecurityException se) {
+                bailOut("Unerlaubter Funktionsaufruf: \"" + se.toString() + "\"");
+            } catch (Exception e) {
+                e.printStackTrace();
+                bailOut("Ausnahme \"" + e.toString() + "\"");
+            }
+            return;
+        }
+
         CFLPInstanceReader reader = new CFLPInstanceReader(fileName);
+        reader.setFingerprint(cache != null);
 
         try {
             CFLPInstanceReader.CFLPInstanceWithThreshold instanceWithThreshold = reader.readInstance();
             CFLPInstance instance = instanceWithThreshold.instance;
             int threshold = instanceWithThreshold.threshold;
-            run(instance, threshold);
+            run(instance, threshold, instanceWithThreshold.fingerprint);
             // Security Manager zuruecksetzen
             System.setSecurityManager(oldsm);
         } catch (SecurityException se) {
@@ -113,89 +198,442 @@ public class Main {
     }
 
     /**
-     * Startet Ihre CFLP Implementierung mit einem Testfall und
-     * &uuml;berpr&uuml;ft danach Ihre L&ouml;sung.
+     * Startet Ihre CFLP Implementierung mit einem Testfall ohne Cache.
      *
      * @param instance Die aktuelle Probleminstanz
      * @throws Exception Signalisiert eine Ausnahme
      */
-    @SuppressWarnings("deprecation")
     protected static void run(CFLPInstance instance, int threshold) throws Exception {
+        run(instance, threshold, null);
+    }
+
+    /**
+     * Startet Ihre CFLP Implementierung mit einem Testfall und
+     * &uuml;berpr&uuml;ft danach Ihre L&ouml;sung.
+     * <p>
+     * Die Suche bekommt die Deadline mit und beendet sich selbst, der Thread
+     * wird nicht mehr mit <code>Thread.stop()</code> abgebrochen. Eine Suche,
+     * die die Deadline um mehr als {@link #GRACE_MILLIS} &uuml;berschreitet,
+     * wird mit {@link CFLP#cancel()} beendet, nach h&ouml;chstens
+     * {@link #CANCEL_MILLIS} wird die bis dahin beste L&ouml;sung gewertet.
+     * </p>
+     * <p>
+     * Ist die Instanz mit einer optimalen L&ouml;sung im Cache, wird nach der
+     * Pr&uuml;fung gegen die Instanz nicht gesucht. Eine nicht optimale
+     * L&ouml;sung aus dem Cache ist die erste beste L&ouml;sung der Suche.
+     * </p>
+     *
+     * @param instance    Die aktuelle Probleminstanz
+     * @param fingerprint Der Fingerprint der Instanzdatei oder null
+     * @throws Exception Signalisiert eine Ausnahme
+     */
+    protected static void run(CFLPInstance instance, int threshold, String fingerprint) throws Exception {
         CFLPInstance originalInstance = new CFLPInstance(instance);
 
         long start = System.currentTimeMillis();
         long end = System.currentTimeMillis();
         long offs = end - start;
-        long timeout = 30000; // 30 Sekunden
+        long timeout = dontStop ? 0 : options.timeLimit; // 0 = ohne Limit
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
 
         chopFileName();
 
-        AbstractCFLP bnbRunner = new CFLP(instance);
+        SolutionCache.Entry cached = lookupCache(originalInstance, fingerprint);
+        if (cached != null && cached.optimal) {
+            printDebug("Optimale Loesung aus dem Cache: " + fingerprint);
+            String fehler = checkThreshold(cached.upperBound, threshold);
+            if (fehler != null)
+                bailOut(fehler);
+            printResult(cached.upperBound, threshold, System.currentTimeMillis() - start);
+            return;
+        }
+
+        // Der Pool fuer die parallele Suche wird hier erzeugt, da der
+        // SecurityManager dem CFLP Thread das Erzeugen von Threads verbietet
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        ForkJoinPool pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+
+        // Die Ereignisse fuer den Flight Recorder registrieren sich beim Laden,
+        // das verbietet der SecurityManager dem CFLP Thread
+        SearchEvents.initialize();
+
+        CFLP bnbRunner = new CFLP(instance, pool, options);
+        if (timeout > 0)
+            bnbRunner.setDeadline(deadline);
+        if (cached != null) {
+            printDebug("Startloesung aus dem Cache: " + cached.upperBound);
+            bnbRunner.setInitialSolution(cached.solution);
+        }
+
         Thread thread = new Thread(bnbRunner, "CFLP Thread");
+        thread.setDaemon(true);
         thread.start();
 
-        if (dontStop)
+        if (timeout <= 0)
             thread.join(0);
         else {
-            // beende Thread nach timeout millisecs
-            thread.join(timeout);
-            if (thread.isAlive())
-                thread.stop();
+            // die Suche beendet sich selbst zur Deadline
+            thread.join(timeout + GRACE_MILLIS);
+            if (thread.isAlive()) {
+                // abbrechen und kurz warten, damit Loesung, Schranke und Statistik
+                // nicht mehr von der laufenden Suche geaendert werden
+                printDebug("Suche hat die Deadline ueberschritten, breche ab und verwende die beste Loesung");
+                bnbRunner.cancel();
+                thread.join(CANCEL_MILLIS);
+            }
         }
 
         // speichere Endzeit
         end = System.currentTimeMillis();
 
+        // Worker des Pools beenden, falls die Suche noch laeuft
+        if (pool != null)
+            pool.shutdownNow();
+
         // speichere Lösung
         AbstractCFLP.BnBSolution sol = bnbRunner.getBestSolution();
         // checke Lösung
-        if (sol == null) {
-            bailOut("Keine gueltige Loesung!");
-        }
+        String fehler = checkSolution(originalInstance, sol);
+        if (fehler != null)
+            bailOut(fehler);
 
         int upper_bound = sol.getUpperBound();
-
         int[] solution = sol.getBestSolution();
-        if (solution.length != originalInstance.getNumCustomers())
-            bailOut("Ihre Loesung hat zu wenige/viele Kunden!");
+        storeCache(fingerprint, originalInstance, sol, bnbRunner.getLowerBound() >= upper_bound);
+
+        long sum = end - start - offs;
+
+        printDebug("Loesung: " + Arrays.toString(solution));
+        printDebug("Untere Schranke: " + bnbRunner.getLowerBound()
+                + (bnbRunner.isTimedOut() ? " (Zeitlimit)" : ""));
+        for (String zeile : bnbRunner.statistics().summary().split("\n"))
+            printDebug(zeile);
+        fehler = checkThreshold(upper_bound, threshold);
+        if (fehler != null)
+            bailOut(fehler);
+
+        printResult(upper_bound, threshold, sum);
+    }
+
+    /**
+     * Gibt das Ergebnis einer g&uuml;ltigen L&ouml;sung aus.
+     *
+     * @param upperBound Die Kosten der L&ouml;sung
+     * @param threshold  Der Schwellwert der Instanz
+     * @param millis     Die Laufzeit
+     */
+    private static void printResult(int upperBound, int threshold, long millis) {
+        StringBuffer msg = new StringBuffer(test ? choppedFileName + ": " : "");
+
+        msg.append("Schwellwert = " + threshold + "." + " Ihr Ergebnis ist OK mit " +
+                "\n" + upperBound);
+
+        if (test)
+            msg.append(", Zeit: "
+                    + (millis > 1000 ? millis / 1000 + "s" : millis + "ms"));
+
+        System.out.println();
+        System.out.println(msg.toString());
+    }
+
+    /**
+     * Sucht die L&ouml;sung einer Instanz im Cache und pr&uuml;ft sie gegen
+     * die Instanz.
+     *
+     * @param originalInstance Die unver&auml;nderte Probleminstanz
+     * @param fingerprint      Der Fingerprint der Instanzdatei oder null
+     * @return Der Eintrag oder null, falls es keinen g&uuml;ltigen gibt
+     */
+    private static SolutionCache.Entry lookupCache(CFLPInstance originalInstance, String fingerprint) {
+        if (cache == null || fingerprint == null)
+            return null;
+
+        SolutionCache.Entry eintrag = cache.lookup(fingerprint,
+                originalInstance.getNumFacilities(), originalInstance.getNumCustomers());
+        if (eintrag == null)
+            return null;
+
+        String fehler;
+        try {
+            fehler = checkSolution(originalInstance, eintrag.solution, eintrag.upperBound);
+        } catch (ArithmeticException e) {
+            fehler = e.toString();
+        }
+        if (fehler != null) {
+            printDebug("Ungueltiger Eintrag im Cache: " + fehler);
+            cache.remove(fingerprint);
+            return null;
+        }
+        return eintrag;
+    }
+
+    /**
+     * Speichert eine gepr&uuml;fte L&ouml;sung im Cache. Ein Fehler beim
+     * Schreiben wird nur als Debug Meldung ausgegeben.
+     */
+    private static void storeCache(String fingerprint, CFLPInstance originalInstance,
+                                   AbstractCFLP.BnBSolution sol, boolean optimal) {
+        if (cache == null || fingerprint == null)
+            return;
+        try {
+            cache.store(fingerprint, originalInstance.getNumFacilities(), sol.getUpperBound(), sol.getBestSolution(), optimal);
+        } catch (IOException e) {
+            printDebug("Cache nicht geschrieben: " + e);
+        }
+    }
+
+    /**
+     * &Uuml;berpr&uuml;ft eine L&ouml;sung gegen die unver&auml;nderte
+     * Probleminstanz.
+     *
+     * @param originalInstance Kopie der Instanz vor dem Start der Suche
+     * @param sol              Die beste L&ouml;sung der Suche oder null
+     * @return Die Fehlermeldung oder null, falls die L&ouml;sung g&uuml;ltig ist
+     */
+    private static String checkSolution(CFLPInstance originalInstance, AbstractCFLP.BnBSolution sol) {
+        if (sol == null)
+            return "Keine gueltige Loesung!";
 
-        int[] usedBandwidths = new int[originalInstance.getNumFacilities()];
-        Arrays.fill(usedBandwidths, 0);
-        int[] connectedCustomers = new int[originalInstance.getNumFacilities()];
-        Arrays.fill(connectedCustomers, 0);
+        return checkSolution(originalInstance, sol.getBestSolution(), sol.getUpperBound());
+    }
+
+    /**
+     * &Uuml;berpr&uuml;ft eine Zuordnung und ihre Kosten gegen die
+     * unver&auml;nderte Probleminstanz.
+     *
+     * @return Die Fehlermeldung oder null, falls die L&ouml;sung g&uuml;ltig ist
+     */
+    private static String checkSolution(CFLPInstance originalInstance, int[] solution, int upperBound) {
+        if (solution.length != originalInstance.getNumCustomers())
+            return "Ihre Loesung hat zu wenige/viele Kunden!";
 
         int fIdx;
         for (int i = 0; i < originalInstance.getNumCustomers(); ++i) {
             fIdx = solution[i];
             if (fIdx < 0 || fIdx >= originalInstance.getNumFacilities())
-                bailOut("Ungueltiger Facility Index!");
+                return "Ungueltiger Facility Index!";
+        }
+
+        int objectiveValue;
+        try {
+            objectiveValue = originalInstance.calcObjectiveValue(solution);
+        } catch (ArithmeticException e) {
+            return "Die Kosten der Loesung passen nicht in ein int!";
         }
 
-        int objectiveValue = originalInstance.calcObjectiveValue(solution);
+        if (Math.abs(objectiveValue - upperBound) > 0)
+            return "Die obere Schranke muss immer gleich der aktuell besten Loesung sein!";
 
-        if (Math.abs(objectiveValue - upper_bound) > 0) {
-            bailOut("Die obere Schranke muss immer gleich der aktuell besten Loesung sein!");
+        return null;
+    }
+
+    /**
+     * @return Die Fehlermeldung, falls das Ergebnis &uuml;ber dem Schwellwert
+     * liegt, sonst null
+     */
+    private static String checkThreshold(int upperBound, int threshold) {
+        if (upperBound > threshold)
+            return "zu schlechte Loesung: Ihr Ergebnis " + upperBound
+                    + " liegt ueber dem Schwellwert (" + threshold + ")";
+        return null;
+    }
+
+    /**
+     * L&ouml;st viele Instanzen in einer JVM, damit Start und JIT nur einmal
+     * bezahlt werden.
+     * <p>
+     * Verzeichnisse werden durch ihre Dateien ersetzt (sortiert, ohne
+     * Unterverzeichnisse). Die Instanzen werden auf {@link #batchThreads}
+     * Threads verteilt, jede Suche l&auml;uft sequentiell in einem eigenen
+     * Daemon-Thread und hat ab ihrem Start das Zeitlimit <code>--time-limit</code>.
+     * Wie bei einer einzelnen Datei wird h&ouml;chstens {@link #GRACE_MILLIS}
+     * &uuml;ber das Zeitlimit hinaus gewartet, danach wird die Suche mit
+     * {@link CFLP#cancel()} beendet und die bis dahin beste L&ouml;sung gewertet.
+     * Gepr&uuml;ft wird wie in {@link #run(CFLPInstance, int)}, ein Fehler
+     * beendet aber nicht den ganzen Batch, sondern steht in der Tabelle, die
+     * am Ende ausgegeben wird.
+     * </p>
+     *
+     * @param names Dateien und Verzeichnisse
+     * @return true, falls alle Instanzen OK sind
+     * @throws InterruptedException Falls der Thread beim Warten unterbrochen wurde
+     */
+    protected static boolean runBatch(List<String> names) throws InterruptedException {
+
+        //=============== Variablen - START ==//
+
+        List<String> files = new ArrayList<>();
+        List<Future<BatchResult>> futures = new ArrayList<>();
+        List<BatchResult> results = new ArrayList<>();
+
+        long start = System.currentTimeMillis();
+        boolean ok = true;
+
+        //=============== Variablen - END ==//
+
+        for (String name : names) {
+            File f = new File(name);
+            File[] inhalt = f.isDirectory() ? f.listFiles() : null;
+            if (inhalt == null) {
+                files.add(name);
+                continue;
+            }
+            Arrays.sort(inhalt);
+            for (File datei : inhalt) {
+                if (datei.isFile() && !datei.isHidden())
+                    files.add(datei.getPath());
+            }
         }
 
-        // Ergebnis ausgeben
-        StringBuffer msg = new StringBuffer(test ? choppedFileName + ": " : "");
+        // Die Ereignisse muessen vor dem ersten CFLP Thread geladen sein
+        SearchEvents.initialize();
 
-        long sum = end - start - offs;
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, batchThreads));
+        try {
+            for (String file : files)
+                futures.add(executor.submit(new BatchTask(file)));
+
+            for (int k = 0; k < files.size(); k++) {
+                try {
+                    results.add(futures.get(k).get());
+                } catch (ExecutionException e) {
+                    results.add(new BatchResult(files.get(k), "FEHLER " + e.getCause()));
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
 
-        printDebug("Loesung: " + Arrays.toString(solution));
-        if (upper_bound > threshold)
-            bailOut("zu schlechte Loesung: Ihr Ergebnis " + upper_bound
-                    + " liegt ueber dem Schwellwert (" + threshold + ")");
+        System.out.println(String.format("%-20s %6s %6s %10s %10s %10s %7s %7s %8s %10s  %s",
+                "Datei", "n", "m", "Schwelle", "Ergebnis", "Schranke", "Start%", "Gap%", "Zeit", "Knoten", "Status"));
+        for (BatchResult r : results) {
+            System.out.println(r.toString());
+            ok &= r.ok;
+        }
+        System.out.println(results.size() + " Instanzen, "
+                + (System.currentTimeMillis() - start) + "ms, " + (ok ? "alle OK" : "mit Fehlern"));
+        return ok;
+    }
 
-        msg.append("Schwellwert = " + threshold + "." + " Ihr Ergebnis ist OK mit " +
-                "\n" + upper_bound);
+    /**
+     * L&ouml;st eine Instanz im Batch Modus. Der Aufruf kommt immer &uuml;ber
+     * diese Methode, damit der SecurityManager das Einlesen erlaubt.
+     *
+     * @param file Die Instanzdatei
+     * @return Die Zeile f&uuml;r die Ergebnistabelle
+     * @throws IOException          Falls die Datei nicht gelesen werden kann
+     * @throws InterruptedException Falls der Thread beim Warten unterbrochen wurde
+     */
+    private static BatchResult solveBatchInstance(String file) throws IOException, InterruptedException {
+        CFLPInstanceReader reader = new CFLPInstanceReader(file);
+        reader.setFingerprint(cache != null);
+        CFLPInstanceReader.CFLPInstanceWithThreshold instanceWithThreshold = reader.readInstance();
+        CFLPInstance instance = instanceWithThreshold.instance;
+        CFLPInstance originalInstance = new CFLPInstance(instance);
+        int threshold = instanceWithThreshold.threshold;
+        String fingerprint = instanceWithThreshold.fingerprint;
 
-        if (test)
-            msg.append(", Zeit: "
-                    + (sum > 1000 ? sum / 1000 + "s" : sum + "ms"));
+        long start = System.currentTimeMillis();
 
-        System.out.println();
-        System.out.println(msg.toString());
+        BatchResult r = new BatchResult(file, null);
+        r.n = originalInstance.getNumFacilities();
+        r.m = originalInstance.getNumCustomers();
+        r.threshold = threshold;
+
+        SolutionCache.Entry cached = lookupCache(originalInstance, fingerprint);
+        if (cached != null && cached.optimal) {
+            r.millis = System.currentTimeMillis() - start;
+            r.upperBound = r.lowerBound = cached.upperBound;
+            String fehler = checkThreshold(r.upperBound, threshold);
+            r.ok = fehler == null;
+            r.status = fehler != null ? "ERR " + fehler : "OK (Cache)";
+            return r;
+        }
+
+        CFLP bnbRunner = new CFLP(instance, null, options);
+        if (options.timeLimit > 0)
+            bnbRunner.setDeadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(options.timeLimit));
+        if (cached != null)
+            bnbRunner.setInitialSolution(cached.solution);
+
+        // Eigener Thread als Watchdog: die Suche beendet sich selbst zur Deadline,
+        // eine zu lange Suche wird abgebrochen und ihre beste Loesung gewertet
+        Thread thread = new Thread(bnbRunner, "CFLP Thread");
+        thread.setDaemon(true);
+        thread.start();
+        thread.join(options.timeLimit > 0 ? options.timeLimit + GRACE_MILLIS : 0);
+        boolean watchdog = thread.isAlive();
+        if (watchdog) {
+            bnbRunner.cancel();
+            thread.join(CANCEL_MILLIS);
+        }
+
+        r.millis = System.currentTimeMillis() - start;
+        r.lowerBound = bnbRunner.getLowerBound();
+        r.nodes = bnbRunner.statistics().nodes();
+        r.initialGap = bnbRunner.statistics().initialGap();
+
+        AbstractCFLP.BnBSolution sol = bnbRunner.getBestSolution();
+        String fehler = checkSolution(originalInstance, sol);
+        if (fehler == null) {
+            r.upperBound = sol.getUpperBound();
+            storeCache(fingerprint, originalInstance, sol, r.lowerBound >= r.upperBound);
+            fehler = checkThreshold(r.upperBound, threshold);
+        }
+
+        r.ok = fehler == null;
+        r.status = fehler != null ? "ERR " + fehler
+                : watchdog ? "OK (Watchdog)" : bnbRunner.isTimedOut() ? "OK (Zeitlimit)" : "OK";
+        return r;
+    }
+
+    /**
+     * Eine Instanz im Batch Modus.
+     */
+    private static class BatchTask implements Callable<BatchResult> {
+
+        private final String file;
+
+        BatchTask(String file) {
+            this.file = file;
+        }
+
+        @Override
+        public BatchResult call() throws Exception {
+            return solveBatchInstance(file);
+        }
+    }
+
+    /**
+     * Eine Zeile der Ergebnistabelle im Batch Modus.
+     */
+    private static class BatchResult {
+
+        private final String file;
+        private int n, m, threshold, upperBound = -1, lowerBound;
+        private long millis, nodes;
+        private double initialGap = Double.NaN;
+        private boolean ok;
+        private String status;
+
+        /**
+         * @param file   Die Instanzdatei
+         * @param status Der Fehler, falls die Instanz gar nicht gel&ouml;st wurde
+         */
+        BatchResult(String file, String status) {
+            this.file = file;
+            this.status = status;
+        }
+
+        @Override
+        public String toString() {
+            String gap = upperBound > 0
+                    ? String.format("%.2f", 100.0 * (upperBound - lowerBound) / upperBound) : "-";
+            String start = Double.isNaN(initialGap) ? "-" : String.format("%.2f", initialGap);
+            return String.format("%-20s %6d %6d %10d %10s %10d %7s %7s %8s %10d  %s",
+                    new File(file).getName(), n, m, threshold, upperBound < 0 ? "-" : String.valueOf(upperBound),
+                    lowerBound, start, gap, millis + "ms", nodes, status);
+        }
     }
 
     /**
@@ -232,12 +670,38 @@ public class Main {
                 test = true;
             } else if (a.equals("-d")) {
                 debug = test = true;
+            } else if (a.equals("-b")) {
+                batch = true;
+            } else if (a.startsWith("--batch-threads=")) {
+                try {
+                    batchThreads = Integer.parseInt(a.substring(a.indexOf('=') + 1));
+                } catch (NumberFormatException e) {
+                    bailOut("Unbekannte Option " + a);
+                }
+            } else if (a.startsWith("--cache=")) {
+                cacheDir = a.substring(a.indexOf('=') + 1);
+            } else if (a.startsWith("--cache-entries=")) {
+                try {
+                    cacheEntries = Integer.parseInt(a.substring(a.indexOf('=') + 1));
+                } catch (NumberFormatException e) {
+                    bailOut("Unbekannte Option " + a);
+                }
+            } else if (a.startsWith("--")) {
+                if (!options.parseOption(a))
+                    bailOut("Unbekannte Option " + a);
+            } else if (batch) {
+                batchFiles.add(a);
             } else {
                 fileName = a;
 
                 break;
             }
         }
+
+        // -s gilt auch fuer die Suche selbst, sonst wuerde run() das Zeitlimit
+        // der Optionen setzen
+        if (dontStop)
+            options.timeLimit = 0;
     }
 
     /**
@@ -0,0 +1,224 @@
+package ad2.ss17.cflp;
+
+import java.util.Arrays;
+
+/**
+ * Speicher fuer die offenen Knoten der Best-First-Suche.
+ * <p>
+ * Ein Knoten speichert nur seinen Elternknoten, den zuletzt fixierten Kunden und
+ * dessen Facility, die Tiefe und die untere Schranke, jeweils als Eintrag in einem flachen
+ * int-Array. Die vollstaendige Belegung ergibt sich aus dem Pfad zur Wurzel. Ein
+ * Knoten bleibt belegt, solange er selbst offen ist oder noch Kinder hat, danach
+ * kommt sein Platz auf eine Freiliste und wird wiederverwendet.
+ * </p>
+ * <p>
+ * Die offenen Knoten liegen in einem binaeren Heap nach unterer Schranke, bei
+ * gleicher Schranke kommt der tiefere Knoten zuerst. Die Anzahl der Knoten ist
+ * durch maxNodes begrenzt, die Arrays wachsen bei Bedarf bis zu dieser Grenze.
+ * </p>
+ */
+final class NodePool {
+
+    // Startgroesse der Arrays
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // Maximale Anzahl gleichzeitig belegter Knoten
+    private final int maxNodes;
+
+    //=============== Knoten ==//
+
+    private int[] parent;
+    private int[] customer;
+    private int[] facility;
+    private int[] depth;
+    private int[] bound;
+    private int[] refs;     // offen (1) plus Anzahl der belegten Kinder
+
+    // Bisher verwendete Plaetze, darueber ist alles frei
+    private int used;
+
+    // Freigegebene Plaetze unterhalb von used
+    private int[] free;
+    private int freeCount;
+
+    //=============== Heap ==//
+
+    private int[] heap;
+    private int heapSize;
+
+
+    /**
+     * @param maxNodes Maximale Anzahl gleichzeitig belegter Knoten
+     */
+    NodePool(int maxNodes) {
+        this.maxNodes = Math.max(1, maxNodes);
+
+        int capacity = Math.min(INITIAL_CAPACITY, this.maxNodes);
+        this.parent = new int[capacity];
+        this.customer = new int[capacity];
+        this.facility = new int[capacity];
+        this.depth = new int[capacity];
+        this.bound = new int[capacity];
+        this.refs = new int[capacity];
+        this.free = new int[capacity];
+        this.heap = new int[capacity];
+    }
+
+    /**
+     * Belegt einen neuen offenen Knoten.
+     *
+     * @param parentNode Der Elternknoten oder -1 fuer die Wurzel
+     * @param j          Der zuletzt fixierte Kunde
+     * @param fac        Dessen Facility
+     * @param d          Anzahl der fixierten Kunden
+     * @param lowerBound Die untere Schranke des Knotens
+     * @return Der Knoten oder -1, falls die Grenze erreicht ist
+     */
+    int allocate(int parentNode, int j, int fac, int d, int lowerBound) {
+
+        //=============== Variablen - START ==//
+
+        int node;
+
+        //=============== Variablen - END ==//
+
+        if (freeCount > 0) {
+            node = free[--freeCount];
+        } else if (used < maxNodes) {
+            if (used == parent.length) {
+                grow();
+            }
+            node = used++;
+        } else {
+            return -1;
+        }
+
+        parent[node] = parentNode;
+        customer[node] = j;
+        facility[node] = fac;
+        depth[node] = d;
+        bound[node] = lowerBound;
+        refs[node] = 1;
+
+        if (parentNode >= 0) {
+            refs[parentNode]++;
+        }
+        return node;
+    }
+
+    /**
+     * Gibt einen Knoten frei, der abgearbeitet oder abgeschnitten wurde. Elternknoten
+     * ohne weitere Kinder werden ebenfalls freigegeben.
+     *
+     * @param node Der Knoten
+     */
+    void release(int node) {
+        while (node >= 0 && --refs[node] == 0) {
+            free[freeCount++] = node;
+            node = parent[node];
+        }
+    }
+
+    /**
+     * Fuegt einen Knoten in die Warteschlange ein.
+     */
+    void push(int node) {
+        int k = heapSize++;
+
+        // Nach oben schieben
+        while (k > 0) {
+            int p = (k - 1) >>> 1;
+            if (!before(node, heap[p])) {
+                break;
+            }
+            heap[k] = heap[p];
+            k = p;
+        }
+        heap[k] = node;
+    }
+
+    /**
+     * Entnimmt den Knoten mit der kleinsten unteren Schranke.
+     */
+    int pop() {
+        int top = heap[0];
+        int last = heap[--heapSize];
+
+        // Nach unten schieben
+        int k = 0;
+        int half = heapSize >>> 1;
+        while (k < half) {
+            int c = 2 * k + 1;
+            if (c + 1 < heapSize && before(heap[c + 1], heap[c])) {
+                c++;
+            }
+            if (!before(heap[c], last)) {
+                break;
+            }
+            heap[k] = heap[c];
+            k = c;
+        }
+        if (heapSize > 0) {
+            heap[k] = last;
+        }
+        return top;
+    }
+
+    boolean isEmpty() {
+        return heapSize == 0;
+    }
+
+    /**
+     * @return Anzahl der offenen Knoten
+     */
+    int size() {
+        return heapSize;
+    }
+
+    /**
+     * @return Anzahl der belegten Knoten (offene und ihre Vorfahren)
+     */
+    int allocated() {
+        return used - freeCount;
+    }
+
+    int parent(int node) {
+        return parent[node];
+    }
+
+    int customer(int node) {
+        return customer[node];
+    }
+
+    int facility(int node) {
+        return facility[node];
+    }
+
+    int depth(int node) {
+        return depth[node];
+    }
+
+    int bound(int node) {
+        return bound[node];
+    }
+
+    /**
+     * Reihenfolge im Heap: kleinere Schranke zuerst, bei Gleichstand der tiefere Knoten.
+     */
+    private boolean before(int a, int b) {
+        return bound[a] < bound[b] || (bound[a] == bound[b] && depth[a] > depth[b]);
+    }
+
+    private void grow() {
+        int capacity = (int) Math.min(maxNodes, 2L * parent.length);
+
+        this.parent = Arrays.copyOf(parent, capacity);
+        this.customer = Arrays.copyOf(customer, capacity);
+        this.facility = Arrays.copyOf(facility, capacity);
+        this.depth = Arrays.copyOf(depth, capacity);
+        this.bound = Arrays.copyOf(bound, capacity);
+        this.refs = Arrays.copyOf(refs, capacity);
+        this.free = Arrays.copyOf(free, capacity);
+        this.heap = Arrays.copyOf(heap, capacity);
+    }
+}
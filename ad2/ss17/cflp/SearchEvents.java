@@ -0,0 +1,130 @@
+package ad2.ss17.cflp;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Eigene Ereignisse fuer den JDK Flight Recorder.
+ * <p>
+ * Ohne laufende Aufzeichnung kostet ein Ereignis nur die Pruefung in commit().
+ * Fortschritt wird hoechstens alle
+ * {@link SearchStatistics#PROGRESS_NANOS} Nanosekunden gemeldet, neue Loesungen
+ * und das Ende der Suche jedes Mal. Aufzeichnen z.B. mit
+ * <code>-XX:StartFlightRecording=filename=cflp.jfr</code>.
+ * </p>
+ * Beim Laden registriert sich jedes Ereignis beim Flight Recorder, das braucht eine
+ * Berechtigung, die der SecurityManager dem CFLP Thread verweigert. Die Klassen
+ * werden daher mit {@link #initialize()} vorher vom Aufrufer geladen. Das Registrieren
+ * startet den ganzen Flight Recorder (einige 100ms), ohne Aufzeichnung beim Start
+ * der JVM werden die Ereignisse daher gar nicht erst verwendet.
+ */
+final class SearchEvents {
+
+    // Der Flight Recorder lief schon beim Aufruf von initialize()
+    private static volatile boolean enabled;
+
+    private SearchEvents() {
+    }
+
+    /**
+     * Laedt und registriert alle Ereignisse, falls der Flight Recorder laeuft. Muss vor
+     * dem Start der Suche ausserhalb von CFLP aufgerufen werden, wenn ein
+     * SecurityManager aktiv ist.
+     */
+    static void initialize() {
+        if (FlightRecorder.isInitialized()) {
+            new Search();
+            new Incumbent();
+            new Progress();
+            enabled = true;
+        }
+    }
+
+    /**
+     * @return true, falls Ereignisse erzeugt werden sollen
+     */
+    static boolean enabled() {
+        return enabled;
+    }
+
+    /**
+     * Die ganze Suche von run() bis zum Ende, mit den Zaehlern der Statistik.
+     */
+    @Name("ad2.cflp.Search")
+    @Label("CFLP Search")
+    @Category("CFLP")
+    @Description("Branch-and-Bound Lauf mit Knotenzahlen und Schranken")
+    static final class Search extends Event {
+        @Label("Nodes")
+        long nodes;
+
+        @Label("Pruned By Bound")
+        long pruned;
+
+        @Label("Nodes Per Second")
+        double nodesPerSecond;
+
+        @Label("Upper Bound")
+        int upperBound;
+
+        @Label("Lower Bound")
+        int lowerBound;
+
+        @Label("Timed Out")
+        boolean timedOut;
+    }
+
+    /**
+     * Eine neue beste Loesung.
+     */
+    @Name("ad2.cflp.Incumbent")
+    @Label("CFLP Incumbent")
+    @Category("CFLP")
+    @Description("Neue beste Loesung der Suche")
+    static final class Incumbent extends Event {
+        @Label("Upper Bound")
+        int upperBound;
+
+        @Label("Lower Bound")
+        int lowerBound;
+
+        @Label("Nodes")
+        long nodes;
+
+        @Label("Source")
+        String source;
+
+        @Label("Since Start")
+        @Timespan(Timespan.NANOSECONDS)
+        long sinceStart;
+    }
+
+    /**
+     * Periodischer Fortschritt der Suche.
+     */
+    @Name("ad2.cflp.Progress")
+    @Label("CFLP Progress")
+    @Category("CFLP")
+    @Description("Knotenzahlen und Schranken waehrend der Suche")
+    static final class Progress extends Event {
+        @Label("Nodes")
+        long nodes;
+
+        @Label("Pruned By Bound")
+        long pruned;
+
+        @Label("Nodes Per Second")
+        double nodesPerSecond;
+
+        @Label("Upper Bound")
+        int upperBound;
+
+        @Label("Lower Bound")
+        int lowerBound;
+    }
+}
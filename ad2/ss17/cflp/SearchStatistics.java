@@ -0,0 +1,258 @@
+package ad2.ss17.cflp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Zaehler der Suche: bewertete Knoten, durch die Schranke abgeschnittene Knoten,
+ * Knoten pro Tiefe und der Verlauf der besten Loesung.
+ * <p>
+ * Die Worker zaehlen ohne Synchronisation in ihrem {@link CFLPSearchState} und
+ * uebertragen ihre Zaehler bei jeder Zeitpruefung und am Ende ihres Teilbaums mit
+ * {@link #add(long[], long, int, int)}. Die Klasse selbst ist synchronisiert, damit
+ * bleibt der Aufwand pro Knoten bei einem Array-Zugriff. Dabei werden auch die
+ * Ereignisse fuer den Flight Recorder erzeugt ({@link SearchEvents}).
+ * </p>
+ */
+final class SearchStatistics {
+
+    // Hoechstens so oft wird ein Fortschritt-Ereignis erzeugt
+    static final long PROGRESS_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final long start = System.nanoTime();
+
+    private final long[] knotenProTiefe;
+    private long knoten;
+    private long abgeschnitten;
+    private long letzterFortschritt = start;
+
+    // Verlauf der besten Loesung: {Nanosekunden seit Start, obere Schranke, Knoten}
+    private final List<long[]> verlauf = new ArrayList<>();
+    private final List<String> quellen = new ArrayList<>();
+
+    // Eroeffnungsheuristiken: Name und {Kosten, Nanosekunden}, -1 = ohne Loesung bzw. ohne Zeit
+    private final List<String> heuristiken = new ArrayList<>();
+    private final List<long[]> heuristikErgebnisse = new ArrayList<>();
+
+    // Beste Loesung vor der Suche und Schranke der Wurzel, -1 = noch nicht berechnet
+    private long startUpperBound = -1;
+    private long wurzelSchranke = -1;
+
+
+    /**
+     * @param m Anzahl der Kunden, die Tiefe geht von 0 bis m
+     */
+    SearchStatistics(int m) {
+        this.knotenProTiefe = new long[m + 1];
+    }
+
+    /**
+     * Uebernimmt die Zaehler eines Workers.
+     *
+     * @param proTiefe   Bewertete Knoten pro Tiefe
+     * @param pruned     Davon durch die Schranke abgeschnitten
+     * @param upperBound Die aktuell beste Loesung
+     * @param lowerBound Die aktuell bewiesene untere Schranke
+     */
+    synchronized void add(long[] proTiefe, long pruned, int upperBound, int lowerBound) {
+        for (int d = 0; d < proTiefe.length; d++) {
+            knotenProTiefe[d] += proTiefe[d];
+            knoten += proTiefe[d];
+        }
+        abgeschnitten += pruned;
+
+        long jetzt = System.nanoTime();
+        if (SearchEvents.enabled() && jetzt - letzterFortschritt >= PROGRESS_NANOS) {
+            letzterFortschritt = jetzt;
+
+            SearchEvents.Progress ereignis = new SearchEvents.Progress();
+            if (ereignis.shouldCommit()) {
+                ereignis.nodes = knoten;
+                ereignis.pruned = abgeschnitten;
+                ereignis.nodesPerSecond = nodesPerSecond(jetzt);
+                ereignis.upperBound = upperBound;
+                ereignis.lowerBound = lowerBound;
+                ereignis.commit();
+            }
+        }
+    }
+
+    /**
+     * Traegt eine neue beste Loesung in den Verlauf ein.
+     *
+     * @param upperBound Die Kosten der Loesung
+     * @param lowerBound Die aktuell bewiesene untere Schranke
+     * @param quelle     Woher die Loesung kommt, z.B. "greedy" oder "suche"
+     */
+    synchronized void incumbent(int upperBound, int lowerBound, String quelle) {
+        long seitStart = System.nanoTime() - start;
+        verlauf.add(new long[]{seitStart, upperBound, knoten});
+        quellen.add(quelle);
+        if (!SearchEvents.enabled()) {
+            return;
+        }
+
+        SearchEvents.Incumbent ereignis = new SearchEvents.Incumbent();
+        if (ereignis.shouldCommit()) {
+            ereignis.upperBound = upperBound;
+            ereignis.lowerBound = lowerBound;
+            ereignis.nodes = knoten;
+            ereignis.source = quelle;
+            ereignis.sinceStart = seitStart;
+            ereignis.commit();
+        }
+    }
+
+    /**
+     * Traegt das Ergebnis einer Eroeffnungsheuristik ein.
+     *
+     * @param name       Name der Heuristik
+     * @param upperBound Die Kosten ihrer Loesung oder -1, falls sie keine brauchbare geliefert hat
+     * @param nanos      Die Laufzeit oder -1, falls sie nicht gemessen wurde
+     */
+    synchronized void construction(String name, int upperBound, long nanos) {
+        heuristiken.add(name);
+        heuristikErgebnisse.add(new long[]{upperBound, nanos});
+    }
+
+    /**
+     * Haelt die Ausgangslage der Suche fest.
+     *
+     * @param upperBound Die beste Loesung vor der Suche
+     * @param rootBound  Die untere Schranke der Wurzel
+     */
+    synchronized void root(int upperBound, int rootBound) {
+        startUpperBound = upperBound;
+        wurzelSchranke = rootBound;
+    }
+
+    /**
+     * @return Luecke zwischen der besten Loesung vor der Suche und der Schranke der
+     * Wurzel in Prozent der Loesung, NaN falls die Wurzel noch nicht berechnet wurde
+     */
+    synchronized double initialGap() {
+        if (startUpperBound <= 0) {
+            return Double.NaN;
+        }
+        return 100.0 * (startUpperBound - Math.min(wurzelSchranke, startUpperBound)) / startUpperBound;
+    }
+
+    /**
+     * @return Anzahl der bewerteten Knoten
+     */
+    synchronized long nodes() {
+        return knoten;
+    }
+
+    /**
+     * @return Anzahl der Knoten, die durch die untere Schranke abgeschnitten wurden
+     */
+    synchronized long pruned() {
+        return abgeschnitten;
+    }
+
+    /**
+     * @return Bewertete Knoten pro Sekunde seit dem Start
+     */
+    synchronized double nodesPerSecond() {
+        return nodesPerSecond(System.nanoTime());
+    }
+
+    /**
+     * @return Kopie der bewerteten Knoten pro Tiefe
+     */
+    synchronized long[] depthHistogram() {
+        return knotenProTiefe.clone();
+    }
+
+    /**
+     * @return Anzahl der neuen besten Loesungen
+     */
+    synchronized int incumbents() {
+        return verlauf.size();
+    }
+
+    /**
+     * Fasst die Zaehler fuer die Debug Ausgabe zusammen. Das Histogramm wird in
+     * hoechstens 10 Bereiche der Tiefe zusammengefasst.
+     *
+     * @return Mehrzeiliger Text
+     */
+    synchronized String summary() {
+
+        //=============== Variablen - START ==//
+
+        StringBuilder sb = new StringBuilder();
+        int tiefe = knotenProTiefe.length;
+        int breite = (tiefe + 9) / 10;
+
+        //=============== Variablen - END ==//
+
+        sb.append(String.format("Knoten: %d, abgeschnitten: %d, %.0f Knoten/s",
+                knoten, abgeschnitten, nodesPerSecond(System.nanoTime())));
+
+        sb.append("\nTiefe:");
+        for (int von = 0; von < tiefe; von += breite) {
+            int bis = Math.min(tiefe, von + breite);
+            long summe = 0;
+            for (int d = von; d < bis; d++) {
+                summe += knotenProTiefe[d];
+            }
+            sb.append(' ').append(von).append('-').append(bis - 1).append(": ").append(summe);
+        }
+
+        if (!heuristiken.isEmpty()) {
+            sb.append("\nStart:");
+            for (int k = 0; k < heuristiken.size(); k++) {
+                long[] ergebnis = heuristikErgebnisse.get(k);
+                sb.append(' ').append(heuristiken.get(k)).append('=');
+                sb.append(ergebnis[0] >= 0 ? String.valueOf(ergebnis[0]) : "-");
+                if (ergebnis[1] >= 0) {
+                    sb.append(" (").append(TimeUnit.NANOSECONDS.toMillis(ergebnis[1])).append("ms)");
+                }
+            }
+        }
+        if (startUpperBound >= 0) {
+            sb.append(String.format("\nWurzel: Loesung %d, Schranke %d, Luecke %.2f%%",
+                    startUpperBound, wurzelSchranke, initialGap()));
+        }
+
+        sb.append("\nLoesungen:");
+        for (int k = 0; k < verlauf.size(); k++) {
+            long[] eintrag = verlauf.get(k);
+            sb.append(String.format(" %dms=%d (%s, %d Knoten)",
+                    TimeUnit.NANOSECONDS.toMillis(eintrag[0]), eintrag[1], quellen.get(k), eintrag[2]));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Erzeugt das Ereignis fuer die ganze Suche, begin() wurde beim Start aufgerufen.
+     *
+     * @param ereignis   Das Ereignis oder null, falls keine Ereignisse erzeugt werden
+     * @param upperBound Die beste Loesung
+     * @param lowerBound Die bewiesene untere Schranke
+     * @param timedOut   true, falls die Suche wegen der Zeit beendet wurde
+     */
+    synchronized void commitSearch(SearchEvents.Search ereignis, int upperBound, int lowerBound, boolean timedOut) {
+        if (ereignis == null) {
+            return;
+        }
+        ereignis.end();
+        if (ereignis.shouldCommit()) {
+            ereignis.nodes = knoten;
+            ereignis.pruned = abgeschnitten;
+            ereignis.nodesPerSecond = nodesPerSecond(System.nanoTime());
+            ereignis.upperBound = upperBound;
+            ereignis.lowerBound = lowerBound;
+            ereignis.timedOut = timedOut;
+            ereignis.commit();
+        }
+    }
+
+    private double nodesPerSecond(long jetzt) {
+        long dauer = Math.max(1, jetzt - start);
+        return knoten * 1e9 / dauer;
+    }
+}
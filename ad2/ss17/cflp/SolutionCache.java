@@ -0,0 +1,198 @@
+package ad2.ss17.cflp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Loesungen auf der Platte, Schluessel ist der Fingerprint der Instanzdatei
+ * ({@link CFLPInstanceReader#setFingerprint(boolean)}).
+ * <p>
+ * Jeder Eintrag ist eine Datei <code>fingerprint.sol</code> im Cache-Verzeichnis:
+ * Kennung {@link #MAGIC}, Version, n, m, Kosten, optimal (0/1) und m Facility Nummern,
+ * alles als int. Neue Eintraege werden in eine temporaere Datei geschrieben und dann
+ * umbenannt, ein abgebrochener Prozess hinterlaesst also keinen halben Eintrag.
+ * </p>
+ * <p>
+ * Die Verdraengung ist LRU ueber die Aenderungszeit der Dateien: ein Treffer setzt sie
+ * auf jetzt, beim Speichern werden die aeltesten Eintraege geloescht, bis hoechstens
+ * maxEntries uebrig sind. Der Cache prueft nur das Format, ob die Loesung zur Instanz
+ * passt, prueft der Aufrufer mit {@link CFLPInstance#calcObjectiveValue(int[])}.
+ * </p>
+ * Alle Zugriffe auf die Platte kommen aus {@link Main}, der SecurityManager verbietet
+ * sie dem CFLP Thread.
+ */
+final class SolutionCache {
+
+    // Die ersten 4 Bytes eines Eintrags: "CFLS"
+    static final int MAGIC = 'C' | 'F' << 8 | 'L' << 16 | 'S' << 24;
+
+    static final int VERSION = 1;
+
+    private static final String ENDUNG = ".sol";
+
+    private final File dir;
+    private final int maxEntries;
+
+
+    /**
+     * Ein Eintrag des Caches.
+     */
+    static final class Entry {
+
+        final int upperBound;
+        final boolean optimal;
+        final int[] solution;
+
+        Entry(int upperBound, boolean optimal, int[] solution) {
+            this.upperBound = upperBound;
+            this.optimal = optimal;
+            this.solution = solution;
+        }
+    }
+
+    /**
+     * @param dir        Das Verzeichnis, wird bei Bedarf angelegt
+     * @param maxEntries Maximale Anzahl an Eintraegen
+     * @throws IOException Falls das Verzeichnis nicht angelegt werden kann
+     */
+    SolutionCache(String dir, int maxEntries) throws IOException {
+        this.dir = new File(dir);
+        this.maxEntries = Math.max(1, maxEntries);
+        if (!this.dir.isDirectory() && !this.dir.mkdirs())
+            throw new IOException(dir + ": Cache-Verzeichnis kann nicht angelegt werden");
+    }
+
+    /**
+     * Sucht die Loesung fuer eine Instanz und markiert den Eintrag als zuletzt verwendet.
+     *
+     * @param fingerprint Der Fingerprint der Instanzdatei
+     * @param n           Anzahl der Facilities der Instanz
+     * @param m           Anzahl der Kunden der Instanz
+     * @return Der Eintrag oder null, falls es keinen passenden gibt
+     */
+    synchronized Entry lookup(String fingerprint, int n, int m) {
+        File datei = file(fingerprint);
+        Entry eintrag = read(datei, n, m);
+        if (eintrag != null) {
+            datei.setLastModified(System.currentTimeMillis());
+        }
+        return eintrag;
+    }
+
+    /**
+     * Speichert eine Loesung, falls sie besser ist als der vorhandene Eintrag oder
+     * erstmals als optimal bewiesen wurde.
+     *
+     * @param fingerprint Der Fingerprint der Instanzdatei
+     * @param n           Anzahl der Facilities der Instanz
+     * @param upperBound  Die Kosten der Loesung
+     * @param solution    Die Loesung, Kunde -&gt; Facility
+     * @param optimal     true, falls die Suche die Optimalitaet bewiesen hat
+     * @throws IOException Falls der Eintrag nicht geschrieben werden kann
+     */
+    synchronized void store(String fingerprint, int n, int upperBound, int[] solution, boolean optimal) throws IOException {
+
+        //=============== Variablen - START ==//
+
+        File datei = file(fingerprint);
+        Entry alt = read(datei, n, solution.length);
+        File tmp;
+
+        //=============== Variablen - END ==//
+
+        if (alt != null && (alt.upperBound < upperBound
+                || (alt.upperBound == upperBound && (alt.optimal || !optimal)))) {
+            return;
+        }
+
+        tmp = File.createTempFile(fingerprint, ".tmp", dir);
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(n);
+                out.writeInt(solution.length);
+                out.writeInt(upperBound);
+                out.writeInt(optimal ? 1 : 0);
+                for (int i : solution) {
+                    out.writeInt(i);
+                }
+            }
+            Files.move(tmp.toPath(), datei.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            tmp.delete();
+        }
+
+        evict();
+    }
+
+    /**
+     * Loescht einen Eintrag, z.B. weil die Loesung nicht zur Instanz passt.
+     *
+     * @param fingerprint Der Fingerprint der Instanzdatei
+     */
+    synchronized void remove(String fingerprint) {
+        file(fingerprint).delete();
+    }
+
+    /**
+     * Loescht die am laengsten nicht verwendeten Eintraege, bis hoechstens maxEntries
+     * uebrig sind.
+     */
+    private void evict() {
+        File[] eintraege = dir.listFiles((d, name) -> name.endsWith(ENDUNG));
+        if (eintraege == null || eintraege.length <= maxEntries) {
+            return;
+        }
+
+        // lastModified nur einmal pro Datei lesen
+        long[][] alter = new long[eintraege.length][];
+        for (int k = 0; k < eintraege.length; k++) {
+            alter[k] = new long[]{eintraege[k].lastModified(), k};
+        }
+        Arrays.sort(alter, Comparator.comparingLong((long[] a) -> a[0]).thenComparingLong(a -> a[1]));
+
+        for (int k = 0; k < eintraege.length - maxEntries; k++) {
+            eintraege[(int) alter[k][1]].delete();
+        }
+    }
+
+    /**
+     * Liest einen Eintrag. Fehlt die Datei, ist sie beschaedigt oder passt sie nicht
+     * zur Groesse der Instanz, gibt es keinen Eintrag.
+     */
+    private Entry read(File datei, int n, int m) {
+        if (!datei.isFile() || datei.length() != 4L * (6 + m)) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(datei)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readInt() != n || in.readInt() != m) {
+                return null;
+            }
+            int upperBound = in.readInt();
+            boolean optimal = in.readInt() == 1;
+            int[] solution = new int[m];
+            for (int j = 0; j < m; j++) {
+                solution[j] = in.readInt();
+            }
+            return new Entry(upperBound, optimal, solution);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private File file(String fingerprint) {
+        return new File(dir, fingerprint + ENDUNG);
+    }
+}